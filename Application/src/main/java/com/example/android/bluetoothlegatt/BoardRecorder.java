@@ -0,0 +1,253 @@
+package com.example.android.bluetoothlegatt;
+
+import com.example.android.bluetoothlegatt.core.PackedTimestamps;
+import com.example.android.bluetoothlegatt.core.SensorChannel;
+import com.example.android.bluetoothlegatt.core.TimestampFormatter;
+
+import com.mbientlab.metawear.AsyncDataProducer;
+import com.mbientlab.metawear.Data;
+import com.mbientlab.metawear.MetaWearBoard;
+import com.mbientlab.metawear.Route;
+import com.mbientlab.metawear.Subscriber;
+import com.mbientlab.metawear.builder.RouteBuilder;
+import com.mbientlab.metawear.builder.RouteComponent;
+import com.mbientlab.metawear.data.Acceleration;
+import com.mbientlab.metawear.data.AngularVelocity;
+import com.mbientlab.metawear.module.AccelerometerBmi160;
+import com.mbientlab.metawear.module.AccelerometerBosch;
+import com.mbientlab.metawear.module.GyroBmi160;
+import com.mbientlab.metawear.module.Logging;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import bolts.Continuation;
+import bolts.Task;
+
+/**
+ * Configures one board's accelerometer and gyro from its {@link RecordingProfile} and
+ * routes their data into the board's channels.  In {@link Mode#PACKED_STREAMING} the
+ * BMI160 packed producers send three samples per notification, leaving room for
+ * higher ODRs in the same connection interval.  In {@link Mode#LOGGING} the samples are
+ * kept in the board's flash instead of being streamed, and only reach the channels
+ * when the log is downloaded after the recording.
+ */
+public class BoardRecorder {
+    public enum Mode {
+        STREAMING,
+        PACKED_STREAMING,
+        LOGGING
+    }
+
+    // Progress updates reported over a whole log download
+    private static final int DOWNLOAD_UPDATES = 100;
+
+    private final Mode mode;
+    private final RecordingProfile profile;
+    private final SensorChannel accelChannel;
+    private final SensorChannel gyroChannel;
+    private final int debugLinesPerSecond;
+
+    /**
+     * @param accelChannel Channel for the accelerometer, null if the profile leaves it off
+     * @param gyroChannel Channel for the gyro, null if the profile leaves it off
+     * @param debugLinesPerSecond Sample lines logged per channel each second, 0 to disable
+     */
+    public BoardRecorder(Mode mode, RecordingProfile profile, SensorChannel accelChannel, SensorChannel gyroChannel,
+            int debugLinesPerSecond) {
+        this.mode = mode;
+        this.profile = profile;
+        this.accelChannel = accelChannel;
+        this.gyroChannel = gyroChannel;
+        this.debugLinesPerSecond = debugLinesPerSecond;
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public RecordingProfile getProfile() {
+        return profile;
+    }
+
+    /**
+     * Marks the board's channels as interrupted until data arrives again.
+     */
+    public void beginGap() {
+        if (accelChannel != null) {
+            accelChannel.beginGap();
+        }
+        if (gyroChannel != null) {
+            gyroChannel.beginGap();
+        }
+    }
+
+    /**
+     * Installs the sensor routes and starts streaming or logging.  The task completes
+     * once the enabled sensors have been started.
+     */
+    public Task<Void> start(MetaWearBoard board) {
+        List<Task<Void>> tasks = new ArrayList<>();
+        if (accelChannel != null) {
+            tasks.add(startAccelerometer(board.getModule(AccelerometerBmi160.class)));
+        }
+        if (gyroChannel != null) {
+            tasks.add(startGyro(board.getModule(GyroBmi160.class)));
+        }
+        if (mode == Mode.LOGGING) {
+            // Logging has to run before the sensors produce their first sample
+            board.getModule(Logging.class).start(false);
+        }
+        return Task.whenAll(tasks);
+    }
+
+    /**
+     * Stops the sensors.  When streaming, the routes installed by {@link #start} are
+     * removed as well; when logging they are kept until the log has been downloaded.
+     */
+    public void stop(MetaWearBoard board) {
+        if (accelChannel != null) {
+            AccelerometerBmi160 accelerometer = board.getModule(AccelerometerBmi160.class);
+            if (mode == Mode.PACKED_STREAMING) {
+                accelerometer.packedAcceleration().stop();
+            } else {
+                accelerometer.acceleration().stop();
+            }
+            accelerometer.stop();
+        }
+        if (gyroChannel != null) {
+            GyroBmi160 gyroscope = board.getModule(GyroBmi160.class);
+            if (mode == Mode.PACKED_STREAMING) {
+                gyroscope.packedAngularVelocity().stop();
+            } else {
+                gyroscope.angularVelocity().stop();
+            }
+            gyroscope.stop();
+        }
+        if (mode == Mode.LOGGING) {
+            board.getModule(Logging.class).stop();
+        } else {
+            board.tearDown();
+        }
+    }
+
+    /**
+     * Downloads the board's log into the channels passed to the constructor, then
+     * removes the log routes.  If the download fails, the routes are kept so it can be
+     * retried.
+     */
+    public Task<Void> download(final MetaWearBoard board, Logging.LogDownloadUpdateHandler progress) {
+        return board.getModule(Logging.class).downloadAsync(DOWNLOAD_UPDATES, progress).onSuccess(new Continuation<Void, Void>() {
+            @Override
+            public Void then(Task<Void> task) throws Exception {
+                board.tearDown();
+                return null;
+            }
+        });
+    }
+
+    private Task<Void> startAccelerometer(final AccelerometerBmi160 accelerometer) {
+        final RateLimitedLogger accelLog = new RateLimitedLogger("Accel", debugLinesPerSecond);
+        final PackedTimestamps accelTimestamps = new PackedTimestamps(profile.getAccelOdr());
+        final AsyncDataProducer accelProducer = mode == Mode.PACKED_STREAMING
+                ? accelerometer.packedAcceleration() : accelerometer.acceleration();
+
+        accelerometer.configure()
+                .odr(accelOdr(profile.getAccelOdr()))
+                .range(AccelerometerBosch.AccRange.valueOf("AR_" + (int) profile.getAccelRange() + "G"))
+                .commit();
+        return accelProducer.addRouteAsync(new RouteBuilder() {
+            @Override
+            public void configure(RouteComponent source) {
+                if (mode == Mode.LOGGING) {
+                    source.log(new Subscriber() {
+                        @Override
+                        public void apply(Data data, Object... env) {
+                            Acceleration accel = data.value(Acceleration.class);
+                            accelChannel.put(TimestampFormatter.millisToNanos(data.timestamp().getTimeInMillis()), accel.x(), accel.y(), accel.z());
+                        }
+                    });
+                } else {
+                    source.stream(new Subscriber() {
+                        @Override
+                        public void apply(Data data, Object... env) {
+                            Acceleration accel = data.value(Acceleration.class);
+                            long timestamp = TimestampFormatter.millisToNanos(data.timestamp().getTimeInMillis());
+                            if (mode == Mode.PACKED_STREAMING) {
+                                timestamp = accelTimestamps.next(timestamp);
+                            }
+                            accelChannel.add(timestamp, accel.x(), accel.y(), accel.z());
+                            if (accelLog.isEnabled()) {
+                                accelLog.log(accelChannel.getMetrics());
+                            }
+                        }
+                    });
+                }
+            }
+        }).onSuccess(new Continuation<Route, Void>() {
+            @Override
+            public Void then(Task<Route> task) throws Exception {
+                accelProducer.start();
+                accelerometer.start();
+                return null;
+            }
+        });
+    }
+
+    private Task<Void> startGyro(final GyroBmi160 gyroscope) {
+        final RateLimitedLogger gyroLog = new RateLimitedLogger("Gyro", debugLinesPerSecond);
+        final PackedTimestamps gyroTimestamps = new PackedTimestamps(profile.getGyroOdr());
+        final AsyncDataProducer gyroProducer = mode == Mode.PACKED_STREAMING
+                ? gyroscope.packedAngularVelocity() : gyroscope.angularVelocity();
+
+        gyroscope.configure()
+                .odr(GyroBmi160.OutputDataRate.valueOf("ODR_" + (int) profile.getGyroOdr() + "_HZ"))
+                .range(GyroBmi160.Range.valueOf("FSR_" + (int) profile.getGyroRange()))
+                .commit();
+        return gyroProducer.addRouteAsync(new RouteBuilder() {
+            @Override
+            public void configure(RouteComponent source) {
+                if (mode == Mode.LOGGING) {
+                    source.log(new Subscriber() {
+                        @Override
+                        public void apply(Data data, Object... env) {
+                            AngularVelocity gyro = data.value(AngularVelocity.class);
+                            gyroChannel.put(TimestampFormatter.millisToNanos(data.timestamp().getTimeInMillis()), gyro.x(), gyro.y(), gyro.z());
+                        }
+                    });
+                } else {
+                    source.stream(new Subscriber() {
+                        @Override
+                        public void apply(Data data, Object... env) {
+                            AngularVelocity gyro = data.value(AngularVelocity.class);
+                            long timestamp = TimestampFormatter.millisToNanos(data.timestamp().getTimeInMillis());
+                            if (mode == Mode.PACKED_STREAMING) {
+                                timestamp = gyroTimestamps.next(timestamp);
+                            }
+                            gyroChannel.add(timestamp, gyro.x(), gyro.y(), gyro.z());
+                            if (gyroLog.isEnabled()) {
+                                gyroLog.log(gyroChannel.getMetrics());
+                            }
+                        }
+                    });
+                }
+            }
+        }).onSuccess(new Continuation<Route, Void>() {
+            @Override
+            public Void then(Task<Route> task) throws Exception {
+                gyroProducer.start();
+                gyroscope.start();
+                return null;
+            }
+        });
+    }
+
+    private static AccelerometerBmi160.OutputDataRate accelOdr(float frequency) {
+        for (AccelerometerBmi160.OutputDataRate odr : AccelerometerBmi160.OutputDataRate.values()) {
+            if (odr.frequency == frequency) {
+                return odr;
+            }
+        }
+        throw new IllegalArgumentException("Unsupported accelerometer ODR " + frequency);
+    }
+}
@@ -0,0 +1,213 @@
+package com.example.android.bluetoothlegatt;
+
+import android.bluetooth.BluetoothAdapter;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.mbientlab.metawear.MetaWearBoard;
+import com.mbientlab.metawear.android.BtleService;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeoutException;
+
+import bolts.Continuation;
+import bolts.Task;
+
+/**
+ * Connects a set of boards in parallel.  At most a fixed number of connection attempts
+ * run at once, each attempt is abandoned after a timeout and failed boards are retried
+ * with exponential backoff.  All {@link Listener} callbacks run on the UI thread.
+ */
+public class ConnectionManager {
+    private final static String TAG = ConnectionManager.class.getSimpleName();
+
+    /**
+     * Work on a connected board that can be retried, see {@link #runWithRetry}.
+     */
+    public interface Operation {
+        Task<Void> run();
+    }
+
+    public interface Listener {
+        void onConnected(MetaWearBoard board);
+        void onFailed(String macAddress, Exception error);
+        void onProgress(int connected, int failed, int total);
+        /**
+         * @param elapsed Milliseconds from the start of the batch until the last board
+         *                connected or gave up
+         */
+        void onFinished(int connected, int total, long elapsed);
+    }
+
+    private final BtleService.LocalBinder serviceBinder;
+    private final BluetoothAdapter bluetoothAdapter;
+    private final int maxConcurrent;
+    private final long attemptTimeout;
+    private final int maxAttempts;
+    private final long initialBackoff;
+
+    /**
+     * @param maxConcurrent  Connection attempts allowed in flight at the same time
+     * @param attemptTimeout Milliseconds before a single attempt is abandoned
+     * @param maxAttempts    Attempts per board before it is reported as failed
+     * @param initialBackoff Milliseconds to wait before the first retry, doubled for
+     *                       every further retry
+     */
+    public ConnectionManager(BtleService.LocalBinder serviceBinder, BluetoothAdapter bluetoothAdapter,
+                             int maxConcurrent, long attemptTimeout, int maxAttempts, long initialBackoff) {
+        this.serviceBinder = serviceBinder;
+        this.bluetoothAdapter = bluetoothAdapter;
+        this.maxConcurrent = maxConcurrent;
+        this.attemptTimeout = attemptTimeout;
+        this.maxAttempts = maxAttempts;
+        this.initialBackoff = initialBackoff;
+    }
+
+    public MetaWearBoard getBoard(String macAddress) {
+        return serviceBinder.getMetaWearBoard(bluetoothAdapter.getRemoteDevice(macAddress));
+    }
+
+    /**
+     * Starts connecting the given boards.  Must be called on the UI thread.
+     */
+    public void connect(Collection<String> macAddresses, Listener listener) {
+        new Batch(macAddresses, listener).start();
+    }
+
+    /**
+     * Connects a single board with the same timeout and backoff as a batch.  The task
+     * fails with the error of the last attempt if the board never connects.
+     */
+    public Task<Void> connectWithRetry(final MetaWearBoard board) {
+        return attempt(board, 1);
+    }
+
+    /**
+     * Runs {@code operation} on the board, connecting it first if needed.  A failed
+     * run is retried with the same backoff and attempt limit as connections; the task
+     * fails with the error of the last run.
+     */
+    public Task<Void> runWithRetry(MetaWearBoard board, Operation operation) {
+        return run(board, operation, 1);
+    }
+
+    private Task<Void> run(final MetaWearBoard board, final Operation operation, final int attempt) {
+        Task<Void> connected = board.isConnected() ? Task.<Void>forResult(null) : connectWithRetry(board);
+        return connected.onSuccessTask(new Continuation<Void, Task<Void>>() {
+            @Override
+            public Task<Void> then(Task<Void> task) throws Exception {
+                return operation.run();
+            }
+        }).continueWithTask(new Continuation<Void, Task<Void>>() {
+            @Override
+            public Task<Void> then(Task<Void> task) throws Exception {
+                if (!task.isFaulted() && !task.isCancelled()) {
+                    return task;
+                }
+
+                Exception error = task.isFaulted() ? task.getError() : new CancellationException("Operation cancelled");
+                Log.i(TAG, board.getMacAddress() + ": run " + attempt + " failed, " + error.getMessage());
+                if (attempt >= maxAttempts) {
+                    return Task.forError(error);
+                }
+                return Task.delay(initialBackoff << (attempt - 1)).continueWithTask(new Continuation<Void, Task<Void>>() {
+                    @Override
+                    public Task<Void> then(Task<Void> task) throws Exception {
+                        return run(board, operation, attempt + 1);
+                    }
+                });
+            }
+        });
+    }
+
+    private Task<Void> attempt(final MetaWearBoard board, final int attempt) {
+        final Task<Void> connect = board.connectAsync();
+        return Task.whenAny(Arrays.asList(connect, Task.delay(attemptTimeout))).continueWithTask(new Continuation<Task<?>, Task<Void>>() {
+            @Override
+            public Task<Void> then(Task<Task<?>> task) throws Exception {
+                if (task.getResult() == connect && !connect.isFaulted() && !connect.isCancelled()) {
+                    return connect;
+                }
+
+                Exception error;
+                if (task.getResult() != connect) {
+                    // Abandons the pending connection so the next attempt starts clean
+                    board.disconnectAsync();
+                    error = new TimeoutException("No connection after " + attemptTimeout + "ms");
+                } else {
+                    error = connect.isFaulted() ? connect.getError() : new TimeoutException("Connection cancelled");
+                }
+                Log.i(TAG, board.getMacAddress() + ": attempt " + attempt + " failed, " + error.getMessage());
+
+                if (attempt >= maxAttempts) {
+                    return Task.forError(error);
+                }
+                return Task.delay(initialBackoff << (attempt - 1)).continueWithTask(new Continuation<Void, Task<Void>>() {
+                    @Override
+                    public Task<Void> then(Task<Void> task) throws Exception {
+                        return attempt(board, attempt + 1);
+                    }
+                });
+            }
+        });
+    }
+
+    private class Batch {
+        private final Queue<String> pending;
+        private final Listener listener;
+        private final int total;
+        private int connected;
+        private int failed;
+        private int active;
+        private long startTime;
+
+        Batch(Collection<String> macAddresses, Listener listener) {
+            this.pending = new ArrayDeque<>(macAddresses);
+            this.listener = listener;
+            this.total = pending.size();
+        }
+
+        void start() {
+            startTime = SystemClock.elapsedRealtime();
+            listener.onProgress(0, 0, total);
+            fill();
+        }
+
+        // Runs on the UI thread only, so the counters need no locking
+        private void fill() {
+            while (active < maxConcurrent && !pending.isEmpty()) {
+                active++;
+                connect(pending.poll());
+            }
+            if (active == 0 && pending.isEmpty()) {
+                long elapsed = SystemClock.elapsedRealtime() - startTime;
+                Log.i(TAG, "Connected " + connected + "/" + total + " boards in " + elapsed + "ms");
+                listener.onFinished(connected, total, elapsed);
+            }
+        }
+
+        private void connect(final String macAddress) {
+            final MetaWearBoard board = getBoard(macAddress);
+            connectWithRetry(board).continueWith(new Continuation<Void, Void>() {
+                @Override
+                public Void then(Task<Void> task) throws Exception {
+                    active--;
+                    if (task.isFaulted()) {
+                        failed++;
+                        listener.onFailed(macAddress, task.getError());
+                    } else {
+                        connected++;
+                        listener.onConnected(board);
+                    }
+                    listener.onProgress(connected, failed, total);
+                    fill();
+                    return null;
+                }
+            }, Task.UI_THREAD_EXECUTOR);
+        }
+    }
+}
@@ -21,21 +21,17 @@ import android.app.ListActivity;
 import android.bluetooth.BluetoothAdapter;
 import android.bluetooth.BluetoothDevice;
 import android.bluetooth.BluetoothManager;
-import android.bluetooth.le.ScanCallback;
-import android.bluetooth.le.ScanFilter;
-import android.bluetooth.le.ScanResult;
 import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
 import android.content.ServiceConnection;
 import android.content.pm.PackageManager;
-import android.media.MediaScannerConnection;
 import android.os.Bundle;
-import android.os.Environment;
 import android.os.Handler;
 import android.os.IBinder;
-import android.os.ParcelUuid;
+import android.os.SystemClock;
 import android.util.Log;
+import android.view.Choreographer;
 import android.view.LayoutInflater;
 import android.view.Menu;
 import android.view.MenuItem;
@@ -43,41 +39,25 @@ import android.view.View;
 import android.view.ViewGroup;
 import android.widget.BaseAdapter;
 import android.widget.Button;
+import android.widget.CheckBox;
 import android.widget.ListView;
 import android.widget.TextView;
 import android.widget.Toast;
 
-import com.mbientlab.metawear.Data;
 import com.mbientlab.metawear.MetaWearBoard;
-import com.mbientlab.metawear.Route;
-import com.mbientlab.metawear.Subscriber;
-import com.mbientlab.metawear.android.BtleService;
-import com.mbientlab.metawear.builder.RouteBuilder;
-import com.mbientlab.metawear.builder.RouteComponent;
-import com.mbientlab.metawear.data.Acceleration;
-import com.mbientlab.metawear.data.AngularVelocity;
 import com.mbientlab.metawear.module.Accelerometer;
-import com.mbientlab.metawear.module.AccelerometerBmi160;
-import com.mbientlab.metawear.module.AccelerometerBosch;
-import com.mbientlab.metawear.module.GyroBmi160;
-import com.mbientlab.metawear.module.Logging;
 
 import org.w3c.dom.Text;
 
-import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
-import java.io.FileWriter;
-import java.io.IOException;
 import java.lang.reflect.Array;
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Map;
+import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.Exchanger;
 
@@ -91,30 +71,33 @@ public class DeviceScanActivity extends ListActivity implements ServiceConnectio
     private LeDeviceListAdapter mLeDeviceListAdapter;
     private BluetoothAdapter mBluetoothAdapter;
     private boolean mScanning;
+    private boolean mExporting;
     private Handler mHandler;
-    private HashSet<UUID> filterServiceUuids;
-    private BtleService.LocalBinder serviceBinder;
-    private HashSet<MetaWearBoard> metaWearBoards = new HashSet<>();
-    private HashMap<String, ArrayList<SensorRecord>> datamap = new HashMap<>();
+    private DeviceScanner mDeviceScanner;
+    private RecordingService recordingService;
 
     private Button mStartButton;
     private Button mStopButton;
     private Button mResetButton;
+    private CheckBox mLogCheckBox;
+    private CheckBox mPackedCheckBox;
 
     private static final int REQUEST_ENABLE_BT = 1;
     // Stops scanning after 10 seconds.
     private static final long SCAN_PERIOD = 10000;
-
+    // Lets the controller batch scan results for a second where it can.
+    private static final long SCAN_REPORT_DELAY = 1000;
     @Override
     public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         getActionBar().setTitle(R.string.title_devices);
         setContentView(R.layout.main);
         mHandler = new Handler();
-        filterServiceUuids = getUuids();
 
         mStartButton = (Button) findViewById(R.id.startbutton);
         mStopButton = (Button) findViewById(R.id.stopbutton);
+        mLogCheckBox = (CheckBox) findViewById(R.id.logcheckbox);
+        mPackedCheckBox = (CheckBox) findViewById(R.id.packedcheckbox);
         addListeners();
 
         // Use this check to determine whether BLE is supported on the device.  Then you can
@@ -136,8 +119,10 @@ public class DeviceScanActivity extends ListActivity implements ServiceConnectio
             finish();
             return;
         }
+        mDeviceScanner = new DeviceScanner(mBluetoothAdapter, getUuids(), SCAN_REPORT_DELAY, mDeviceScanListener);
 
-        getApplicationContext().bindService(new Intent(this, BtleService.class),
+        // The service keeps boards and recordings alive across activity restarts
+        getApplicationContext().bindService(new Intent(this, RecordingService.class),
                 this, Context.BIND_AUTO_CREATE);
     }
 
@@ -154,6 +139,7 @@ public class DeviceScanActivity extends ListActivity implements ServiceConnectio
             menu.findItem(R.id.menu_refresh).setActionView(
                     R.layout.actionbar_indeterminate_progress);
         }
+        menu.findItem(R.id.menu_cancel_export).setVisible(mExporting);
         return true;
     }
 
@@ -167,6 +153,14 @@ public class DeviceScanActivity extends ListActivity implements ServiceConnectio
             case R.id.menu_stop:
                 scanLeDevice(false);
                 break;
+            case R.id.menu_connect_all:
+                connectAll();
+                break;
+            case R.id.menu_cancel_export:
+                if (recordingService != null) {
+                    recordingService.cancelExport();
+                }
+                break;
         }
         return true;
     }
@@ -213,12 +207,15 @@ public class DeviceScanActivity extends ListActivity implements ServiceConnectio
         if (device == null) {
             return;
         }
-        final MetaWearBoard board = serviceBinder.getMetaWearBoard(device);
+        if (recordingService == null || recordingService.getConnectionManager() == null) {
+            return;
+        }
+        final MetaWearBoard board = recordingService.getConnectionManager().getBoard(device.getAddress());
         if (board == null) {
             return;
         }
         else {
-            board.connectAsync().continueWith(new Continuation<Void, Void>() {
+            recordingService.getConnectionManager().connectWithRetry(board).continueWith(new Continuation<Void, Void>() {
                 @Override
                 public Void then(Task<Void> task) throws Exception {
                     if (task.isFaulted()) {
@@ -227,7 +224,7 @@ public class DeviceScanActivity extends ListActivity implements ServiceConnectio
                     else {
                         MWDeviceConfirmationFragment confirmation = new MWDeviceConfirmationFragment();
                         confirmation.flashDeviceLight(board, getFragmentManager());
-                        metaWearBoards.add(board);
+                        recordingService.addBoard(board);
                         runOnUiThread(new Runnable() {
                             @Override
                             public void run() {
@@ -239,8 +236,44 @@ public class DeviceScanActivity extends ListActivity implements ServiceConnectio
                 }
             });
         }
-        TextView status = (TextView) v.findViewById(R.id.device_status);
-        status.setText(R.string.connected);
+        mLeDeviceListAdapter.setConnected(device, true);
+    }
+
+    private void connectAll() {
+        if (recordingService == null || recordingService.getConnectionManager() == null) {
+            return;
+        }
+        scanLeDevice(false);
+
+        ArrayList<String> macAddresses = new ArrayList<>();
+        for (int i = 0; i < mLeDeviceListAdapter.getCount(); i++) {
+            macAddresses.add(mLeDeviceListAdapter.getDevice(i).getAddress());
+        }
+
+        recordingService.getConnectionManager().connect(macAddresses, new ConnectionManager.Listener() {
+            @Override
+            public void onConnected(MetaWearBoard board) {
+                recordingService.addBoard(board);
+            }
+
+            @Override
+            public void onFailed(String macAddress, Exception error) {
+                Log.w("MainActivity", "Failed to connect " + macAddress, error);
+            }
+
+            @Override
+            public void onProgress(int connected, int failed, int total) {
+                getActionBar().setSubtitle(getString(R.string.connect_progress, connected, failed, total));
+            }
+
+            @Override
+            public void onFinished(int connected, int total, long elapsed) {
+                getActionBar().setSubtitle(null);
+                Toast.makeText(getApplicationContext(),
+                        getString(R.string.toast_connect_finished, connected, total, elapsed / 1000f),
+                        Toast.LENGTH_LONG).show();
+            }
+        });
     }
 
     public void pairDevice() {}
@@ -253,34 +286,38 @@ public class DeviceScanActivity extends ListActivity implements ServiceConnectio
                 @Override
                 public void run() {
                     mScanning = false;
-                    mBluetoothAdapter.stopLeScan(mLeScanCallback);
+                    mDeviceScanner.stop();
                     invalidateOptionsMenu();
                 }
             }, SCAN_PERIOD);
 
-            mScanning = true;
-            mBluetoothAdapter.startLeScan(mLeScanCallback);
+            mScanning = mDeviceScanner.start();
         } else {
             mScanning = false;
-            mBluetoothAdapter.stopLeScan(mLeScanCallback);
+            mDeviceScanner.stop();
         }
         invalidateOptionsMenu();
     }
 
     @Override
     public void onServiceConnected(ComponentName componentName, IBinder iBinder) {
-        // Typecast the binder to the service's LocalBinder class
-        serviceBinder = (BtleService.LocalBinder) iBinder;
+        recordingService = ((RecordingService.LocalBinder) iBinder).getService();
+        recordingService.setListener(mRecordingListener);
     }
 
     @Override
-    public void onServiceDisconnected(ComponentName componentName) { }
+    public void onServiceDisconnected(ComponentName componentName) {
+        recordingService = null;
+    }
 
     @Override
     public void onDestroy() {
         super.onDestroy();
 
-        // Unbind the service when the activity is destroyed
+        // Unbind the service when the activity is destroyed, a running recording carries on
+        if (recordingService != null) {
+            recordingService.setListener(null);
+        }
         getApplicationContext().unbindService(this);
     }
 
@@ -288,64 +325,15 @@ public class DeviceScanActivity extends ListActivity implements ServiceConnectio
         mStartButton.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View view) {
-                for (final MetaWearBoard board : metaWearBoards) {
-                    datamap.put(board.getMacAddress() + "_ACCEL", new ArrayList<SensorRecord>());
-                    datamap.put(board.getMacAddress() + "_GYRO", new ArrayList<SensorRecord>());
-
-                    final AccelerometerBmi160 accelerometer = board.getModule(AccelerometerBmi160.class);
-                    final GyroBmi160 gyroscope = board.getModule(GyroBmi160.class);
-
-                    accelerometer.configure()
-                            .odr(AccelerometerBmi160.OutputDataRate.ODR_25_HZ)
-                            .range(AccelerometerBosch.AccRange.AR_4G)
-                            .commit();
-                    accelerometer.acceleration().addRouteAsync(new RouteBuilder() {
-                        @Override
-                        public void configure(RouteComponent source) {
-                            source.stream(new Subscriber() {
-                                @Override
-                                public void apply(Data data, Object... env) {
-                                    Acceleration accel = data.value(Acceleration.class);
-                                    datamap.get(board.getMacAddress() + "_ACCEL")
-                                            .add(new SensorRecord(data.formattedTimestamp(), accel.x(), accel.y(), accel.z()));
-                                    Log.i("Accel: ", data.formattedTimestamp() + ", " + accel.x() + ", " + accel.y() + ", " + accel.z());
-                                }
-                            });
-                        }
-                    }).continueWith(new Continuation<Route, Void>() {
-                        @Override
-                        public Void then(Task<Route> task) throws Exception {
-                            accelerometer.acceleration().start();
-                            accelerometer.start();
-                            return null;
-                        }
-                    });
-
-                    gyroscope.configure()
-                            .odr(GyroBmi160.OutputDataRate.ODR_25_HZ)
-                            .range(GyroBmi160.Range.FSR_250)
-                            .commit();
-                    gyroscope.angularVelocity().addRouteAsync(new RouteBuilder() {
-                        @Override
-                        public void configure(RouteComponent source) {
-                            source.stream(new Subscriber() {
-                                @Override
-                                public void apply(Data data, Object... env) {
-                                    AngularVelocity gyro = data.value(AngularVelocity.class);
-                                    datamap.get(board.getMacAddress() + "_GYRO")
-                                            .add(new SensorRecord(data.formattedTimestamp(), gyro.x(), gyro.y(), gyro.z()));
-                                    Log.i("Gyro: ", data.formattedTimestamp() + ", " + gyro.x() + ", " + gyro.y() + ", " + gyro.z());
-                                }
-                            });
-                        }
-                    }).continueWith(new Continuation<Route, Void>() {
-                        @Override
-                        public Void then(Task<Route> task) throws Exception {
-                            gyroscope.angularVelocity().start();
-                            gyroscope.start();
-                            return null;
-                        }
-                    });
+                if (recordingService == null) {
+                    return;
+                }
+                BoardRecorder.Mode screenMode = mLogCheckBox.isChecked() ? BoardRecorder.Mode.LOGGING
+                        : mPackedCheckBox.isChecked() ? BoardRecorder.Mode.PACKED_STREAMING : BoardRecorder.Mode.STREAMING;
+                List<String> problems = recordingService.startRecording(screenMode);
+                if (!problems.isEmpty()) {
+                    Toast.makeText(getApplicationContext(), getString(R.string.toast_profile_error, problems.get(0)),
+                            Toast.LENGTH_LONG).show();
                 }
             }
         });
@@ -353,86 +341,113 @@ public class DeviceScanActivity extends ListActivity implements ServiceConnectio
         mStopButton.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View view) {
-                for (MetaWearBoard board : metaWearBoards) {
-                    final AccelerometerBmi160 accelerometer = board.getModule(AccelerometerBmi160.class);
-                    final GyroBmi160 gyroscope = board.getModule(GyroBmi160.class);
-
-                    accelerometer.acceleration().stop();
-                    accelerometer.stop();
-                    gyroscope.angularVelocity().stop();
-                    gyroscope.stop();
-                    board.tearDown();
-                    board.disconnectAsync().continueWith(new Continuation<Void, Void>() {
-                        @Override
-                        public Void then(Task<Void> task) throws Exception {
-                            Log.i("MainActivity", "Disconnected");
-                            return null;
-                        }
-                    });
+                if (recordingService != null) {
+                    recordingService.stopRecording();
                 }
-
-                writeFiles();
             }
         });
     }
 
-    private void writeFiles() {
-        File directory = new File(Environment.getExternalStorageDirectory()
-            + File.separator + "PERL LAB");
-        if (!directory.isDirectory()) {
-            Log.i("Main", "Directory created: " + directory.getAbsolutePath());
-            directory.mkdirs();
-        }
-
-        for (Map.Entry<String, ArrayList<SensorRecord>> entry : datamap.entrySet()) {
-            String filename = entry.getKey().replace(":", "-");
-            String timestamp = entry.getValue().get(0).getTimestamp().substring(0, 16).replace(":", "");
-            File file = new File(directory, filename + "_" + timestamp + ".txt");
-            Log.i("Main", "Filename: " + file.getAbsolutePath());
-
-            try {
-                BufferedWriter bufferedWriter = new BufferedWriter(new FileWriter(file));
-                for (SensorRecord record : entry.getValue()) {
-                    bufferedWriter.write(record.toString());
-                    bufferedWriter.newLine();
-                }
-                bufferedWriter.close();
-            }
-            catch (IOException e) {
-                e.printStackTrace();
+    private RecordingService.Listener mRecordingListener = new RecordingService.Listener() {
+        @Override
+        public void onDownloadProgress(int percent) {
+            getActionBar().setSubtitle(percent < 100 ? getString(R.string.download_progress, percent) : null);
+        }
+
+        @Override
+        public void onExportProgress(String name, int percent) {
+            if (!mExporting) {
+                mExporting = true;
+                invalidateOptionsMenu();
             }
+            getActionBar().setSubtitle(getString(R.string.export_progress, name, percent));
+        }
 
-            // Discover new files
-            String[] path = {file.getAbsolutePath()};
-            MediaScannerConnection.scanFile(getApplicationContext(), path, null, null);
+        @Override
+        public void onSessionSaved(List<File> files) {
+            mExporting = false;
+            invalidateOptionsMenu();
+            getActionBar().setSubtitle(null);
+            Toast.makeText(getApplicationContext(), getString(R.string.toast_session_saved, files.size()),
+                    Toast.LENGTH_SHORT).show();
         }
-    }
 
-    // Adapter for holding devices found through scanning.
-    private class LeDeviceListAdapter extends BaseAdapter {
-        private ArrayList<BluetoothDevice> mLeDevices;
-        private LayoutInflater mInflator;
+        @Override
+        public void onSessionRecovered(List<File> files) {
+            mExporting = false;
+            invalidateOptionsMenu();
+            getActionBar().setSubtitle(null);
+            Toast.makeText(getApplicationContext(), R.string.toast_session_recovered, Toast.LENGTH_SHORT).show();
+        }
+    };
 
+    // Adapter for holding devices found through scanning.
+    private class LeDeviceListAdapter extends BaseAdapter implements Choreographer.FrameCallback {
+        // Weight of the newest reading in the smoothed RSSI
+        private static final float RSSI_SMOOTHING = 0.25f;
 
+        private ArrayList<DeviceEntry> mLeDevices;
+        private HashMap<String, DeviceEntry> mDeviceIndex;
+        private LayoutInflater mInflator;
+        private boolean mRefreshPending;
 
         public LeDeviceListAdapter() {
             super();
-            mLeDevices = new ArrayList<BluetoothDevice>();
+            mLeDevices = new ArrayList<DeviceEntry>();
+            mDeviceIndex = new HashMap<String, DeviceEntry>();
             mInflator = DeviceScanActivity.this.getLayoutInflater();
         }
 
-        public void addDevice(BluetoothDevice device) {
-            if(!mLeDevices.contains(device)) {
-                mLeDevices.add(device);
+        /**
+         * Adds a newly seen device at the end of the list, or updates its signal strength
+         * if it is already listed.  The list redraws at most once per frame.
+         */
+        public void addDevice(BluetoothDevice device, int rssi) {
+            DeviceEntry entry = mDeviceIndex.get(device.getAddress());
+            if (entry == null) {
+                entry = new DeviceEntry(device, rssi);
+                mDeviceIndex.put(device.getAddress(), entry);
+                mLeDevices.add(entry);
+            } else {
+                entry.rssi += RSSI_SMOOTHING * (rssi - entry.rssi);
+            }
+            entry.lastSeen = SystemClock.elapsedRealtime();
+            scheduleRefresh();
+        }
+
+        public void setConnected(BluetoothDevice device, boolean connected) {
+            DeviceEntry entry = mDeviceIndex.get(device.getAddress());
+            if (entry != null) {
+                entry.connected = connected;
+                scheduleRefresh();
             }
         }
 
         public BluetoothDevice getDevice(int position) {
-            return mLeDevices.get(position);
+            return mLeDevices.get(position).device;
         }
 
         public void clear() {
             mLeDevices.clear();
+            mDeviceIndex.clear();
+            if (mRefreshPending) {
+                Choreographer.getInstance().removeFrameCallback(this);
+                mRefreshPending = false;
+            }
+            notifyDataSetChanged();
+        }
+
+        private void scheduleRefresh() {
+            if (!mRefreshPending) {
+                mRefreshPending = true;
+                Choreographer.getInstance().postFrameCallback(this);
+            }
+        }
+
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            mRefreshPending = false;
+            notifyDataSetChanged();
         }
 
         @Override
@@ -442,12 +457,18 @@ public class DeviceScanActivity extends ListActivity implements ServiceConnectio
 
         @Override
         public Object getItem(int i) {
-            return mLeDevices.get(i);
+            return mLeDevices.get(i).device;
         }
 
+        // The MAC address as a 48 bit number, so a device keeps its id across clear()
         @Override
         public long getItemId(int i) {
-            return i;
+            return Long.parseLong(mLeDevices.get(i).device.getAddress().replace(":", ""), 16);
+        }
+
+        @Override
+        public boolean hasStableIds() {
+            return true;
         }
 
         @Override
@@ -460,21 +481,24 @@ public class DeviceScanActivity extends ListActivity implements ServiceConnectio
                 viewHolder.deviceAddress = (TextView) view.findViewById(R.id.device_address);
                 viewHolder.deviceName = (TextView) view.findViewById(R.id.device_name);
                 viewHolder.deviceStatus = (TextView) view.findViewById(R.id.device_status);
+                viewHolder.deviceSignal = (TextView) view.findViewById(R.id.device_signal);
                 view.setTag(viewHolder);
             } else {
                 viewHolder = (ViewHolder) view.getTag();
             }
 
-            BluetoothDevice device = mLeDevices.get(i);
-            final String deviceName = device.getName();
+            DeviceEntry entry = mLeDevices.get(i);
+            final String deviceName = entry.device.getName();
             if (deviceName != null && deviceName.length() > 0) {
                 viewHolder.deviceName.setText(deviceName);
             }
             else {
                 viewHolder.deviceName.setText(R.string.unknown_device);
             }
-            viewHolder.deviceAddress.setText(device.getAddress());
-            viewHolder.deviceStatus.setText(R.string.disconnected);
+            viewHolder.deviceAddress.setText(entry.device.getAddress());
+            viewHolder.deviceStatus.setText(entry.connected ? R.string.connected : R.string.disconnected);
+            viewHolder.deviceSignal.setText(getString(R.string.device_signal, Math.round(entry.rssi),
+                    (SystemClock.elapsedRealtime() - entry.lastSeen) / 1000));
 
             return view;
         }
@@ -488,64 +512,11 @@ public class DeviceScanActivity extends ListActivity implements ServiceConnectio
         return filterUuids;
     }
 
-    // Credit to BleToolbox from https://github.com/mbientlab-projects/BleToolbox
-    private BluetoothAdapter.LeScanCallback mLeScanCallback = new BluetoothAdapter.LeScanCallback() {
-        private void foundDevice(final BluetoothDevice btDevice, final int rssi) {
-            mHandler.post(new Runnable() {
-                @Override
-                public void run() {
-                    mLeDeviceListAdapter.addDevice(btDevice);
-                    mLeDeviceListAdapter.notifyDataSetChanged();
-                }
-            });
-        }
-
+    private DeviceScanner.Listener mDeviceScanListener = new DeviceScanner.Listener() {
         @Override
-        public void onLeScan(BluetoothDevice bluetoothDevice, int rssi, byte[] scanRecord) {
-            ///< Service UUID parsing code taking from stack overflow= http://stackoverflow.com/a/24539704
-
-            ByteBuffer buffer= ByteBuffer.wrap(scanRecord).order(ByteOrder.LITTLE_ENDIAN);
-            boolean stop= false;
-            while (!stop && buffer.remaining() > 2) {
-                byte length = buffer.get();
-                if (length == 0) break;
-
-                byte type = buffer.get();
-                switch (type) {
-                    case 0x02: // Partial list of 16-bit UUIDs
-                    case 0x03: // Complete list of 16-bit UUIDs
-                        while (length >= 2) {
-                            UUID serviceUUID = UUID.fromString(String.format("%08x-0000-1000-8000-00805f9b34fb", buffer.getShort()));
-                            stop = filterServiceUuids.isEmpty() || filterServiceUuids.contains(serviceUUID);
-                            if (stop) {
-                                foundDevice(bluetoothDevice, rssi);
-                            }
-
-                            length -= 2;
-                        }
-                        break;
-
-                    case 0x06: // Partial list of 128-bit UUIDs
-                    case 0x07: // Complete list of 128-bit UUIDs
-                        while (!stop && length >= 16) {
-                            long lsb= buffer.getLong(), msb= buffer.getLong();
-                            stop= filterServiceUuids.isEmpty() || filterServiceUuids.contains(new UUID(msb, lsb));
-                            if (stop) {
-                                foundDevice(bluetoothDevice, rssi);
-                            }
-                            length -= 16;
-                        }
-                        break;
-
-                    default:
-                        buffer.position(buffer.position() + length - 1);
-                        break;
-                }
-            }
-
-            if (!stop && filterServiceUuids.isEmpty()) {
-                foundDevice(bluetoothDevice, rssi);
-            }
+        public void onDeviceFound(BluetoothDevice btDevice, int rssi) {
+            // Scan results are delivered on the main thread
+            mLeDeviceListAdapter.addDevice(btDevice, rssi);
         }
     };
 
@@ -553,5 +524,18 @@ public class DeviceScanActivity extends ListActivity implements ServiceConnectio
         TextView deviceName;
         TextView deviceAddress;
         TextView deviceStatus;
+        TextView deviceSignal;
+    }
+
+    static class DeviceEntry {
+        final BluetoothDevice device;
+        float rssi;
+        long lastSeen;
+        boolean connected;
+
+        DeviceEntry(BluetoothDevice device, int rssi) {
+            this.device = device;
+            this.rssi = rssi;
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,123 @@
+package com.example.android.bluetoothlegatt;
+
+import android.bluetooth.BluetoothAdapter;
+import android.bluetooth.BluetoothDevice;
+import android.bluetooth.le.BluetoothLeScanner;
+import android.bluetooth.le.ScanCallback;
+import android.bluetooth.le.ScanFilter;
+import android.bluetooth.le.ScanResult;
+import android.bluetooth.le.ScanSettings;
+import android.os.ParcelUuid;
+import android.util.Log;
+
+import com.example.android.bluetoothlegatt.core.AdvertisementParser;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Scans for boards advertising one of a set of services with {@link BluetoothLeScanner}.
+ * Where the controller supports it, the services are matched by hardware
+ * {@link ScanFilter}s and results are batched by the controller, so the app is only
+ * woken up once per report delay.  Otherwise every advertisement is delivered and
+ * checked with an {@link AdvertisementParser}.
+ */
+public class DeviceScanner {
+    public interface Listener {
+        void onDeviceFound(BluetoothDevice device, int rssi);
+    }
+
+    private final static String TAG = DeviceScanner.class.getSimpleName();
+
+    private final BluetoothAdapter adapter;
+    private final Collection<UUID> services;
+    private final AdvertisementParser parser;
+    private final long reportDelay;
+    private final Listener listener;
+    private BluetoothLeScanner scanner;
+    private boolean hardwareFiltering;
+
+    private final ScanCallback callback = new ScanCallback() {
+        @Override
+        public void onScanResult(int callbackType, ScanResult result) {
+            handle(result);
+        }
+
+        @Override
+        public void onBatchScanResults(List<ScanResult> results) {
+            for (ScanResult result : results) {
+                handle(result);
+            }
+        }
+
+        @Override
+        public void onScanFailed(int errorCode) {
+            Log.w(TAG, "Scan failed with error " + errorCode);
+        }
+    };
+
+    /**
+     * @param services    Services to look for, every board is reported if empty
+     * @param reportDelay Milliseconds the controller may hold results back for when it
+     *                    can batch them
+     */
+    public DeviceScanner(BluetoothAdapter adapter, Collection<UUID> services, long reportDelay, Listener listener) {
+        this.adapter = adapter;
+        this.services = services;
+        this.parser = new AdvertisementParser(services);
+        this.reportDelay = reportDelay;
+        this.listener = listener;
+    }
+
+    /**
+     * @return False if scanning could not start because Bluetooth is off
+     */
+    public boolean start() {
+        scanner = adapter.getBluetoothLeScanner();
+        if (scanner == null) {
+            return false;
+        }
+
+        hardwareFiltering = adapter.isOffloadedFilteringSupported();
+        List<ScanFilter> filters = new ArrayList<>();
+        if (hardwareFiltering) {
+            for (UUID service : services) {
+                filters.add(new ScanFilter.Builder().setServiceUuid(new ParcelUuid(service)).build());
+            }
+        }
+        long delay = adapter.isOffloadedScanBatchingSupported() ? reportDelay : 0;
+        ScanSettings settings = new ScanSettings.Builder()
+                .setScanMode(ScanSettings.SCAN_MODE_BALANCED)
+                .setReportDelay(delay)
+                .build();
+        Log.i(TAG, "Scanning with " + (hardwareFiltering ? "hardware" : "software") + " filtering, report delay " + delay + " ms");
+        scanner.startScan(filters, settings, callback);
+        return true;
+    }
+
+    /**
+     * Stops scanning, delivering any results the controller still holds first.
+     */
+    public void stop() {
+        if (scanner == null) {
+            return;
+        }
+        if (adapter.isEnabled()) {
+            scanner.flushPendingScanResults(callback);
+            scanner.stopScan(callback);
+        }
+        scanner = null;
+    }
+
+    private void handle(ScanResult result) {
+        if (!hardwareFiltering) {
+            byte[] scanRecord = result.getScanRecord() == null ? null : result.getScanRecord().getBytes();
+            if (!parser.matches(scanRecord)) {
+                return;
+            }
+        }
+        listener.onDeviceFound(result.getDevice(), result.getRssi());
+    }
+}
@@ -0,0 +1,43 @@
+package com.example.android.bluetoothlegatt;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.example.android.bluetoothlegatt.core.ChannelMetrics;
+import com.example.android.bluetoothlegatt.core.TimestampFormatter;
+
+/**
+ * Debug logger for per-sample callbacks that writes at most a fixed number of lines
+ * per second.  Samples arriving once the budget is used up are skipped before any
+ * string is built.  Not thread safe, use one instance per channel.
+ */
+public class RateLimitedLogger {
+    private final String tag;
+    private final int linesPerSecond;
+    private final TimestampFormatter formatter = new TimestampFormatter();
+    private long windowStart;
+    private int lines;
+
+    public RateLimitedLogger(String tag, int linesPerSecond) {
+        this.tag = tag;
+        this.linesPerSecond = linesPerSecond;
+    }
+
+    public boolean isEnabled() {
+        return linesPerSecond > 0;
+    }
+
+    public void log(ChannelMetrics metrics) {
+        long now = SystemClock.uptimeMillis();
+        if (now - windowStart >= 1000) {
+            windowStart = now;
+            lines = 0;
+        }
+        if (lines >= linesPerSecond) {
+            return;
+        }
+
+        lines++;
+        Log.d(tag, formatter.format(metrics.getLastTimestamp()) + ", " + metrics);
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.android.bluetoothlegatt;
+
+import android.util.Log;
+
+import com.mbientlab.metawear.MetaWearBoard;
+
+import bolts.Continuation;
+import bolts.Task;
+
+/**
+ * Keeps boards streaming for the length of a recording.  When a board drops, its
+ * channels are marked as interrupted, the board is reconnected with backoff until it
+ * comes back or the session ends, and its sensor routes are installed again so data
+ * resumes into the same channels.  The interval without data ends up in the session
+ * metadata.
+ */
+public class ReconnectSupervisor {
+    private final static String TAG = ReconnectSupervisor.class.getSimpleName();
+
+    private final ConnectionManager connectionManager;
+    private final long retryDelay;
+    private volatile boolean active = true;
+
+    /**
+     * @param retryDelay Milliseconds to wait after a full round of connection attempts
+     *                   failed before starting the next one
+     */
+    public ReconnectSupervisor(ConnectionManager connectionManager, long retryDelay) {
+        this.connectionManager = connectionManager;
+        this.retryDelay = retryDelay;
+    }
+
+    public void watch(final MetaWearBoard board, final BoardRecorder boardRecorder) {
+        board.onUnexpectedDisconnect(new MetaWearBoard.UnexpectedDisconnectHandler() {
+            @Override
+            public void disconnected(int status) {
+                if (!active) {
+                    return;
+                }
+                Log.w(TAG, board.getMacAddress() + " dropped during recording, status " + status);
+                boardRecorder.beginGap();
+                reconnect(board, boardRecorder);
+            }
+        });
+    }
+
+    /**
+     * Stops reconnecting, boards dropping after this are left alone.
+     */
+    public void stop() {
+        active = false;
+    }
+
+    public boolean isActive() {
+        return active;
+    }
+
+    private void reconnect(final MetaWearBoard board, final BoardRecorder boardRecorder) {
+        connectionManager.connectWithRetry(board).onSuccessTask(new Continuation<Void, Task<Void>>() {
+            @Override
+            public Task<Void> then(Task<Void> task) throws Exception {
+                if (!active) {
+                    return task;
+                }
+                // Routes from before the drop are stale, start over with fresh ones
+                board.tearDown();
+                return boardRecorder.start(board);
+            }
+        }).continueWith(new Continuation<Void, Void>() {
+            @Override
+            public Void then(Task<Void> task) throws Exception {
+                if (!active) {
+                    return null;
+                }
+                if (task.isFaulted()) {
+                    Log.w(TAG, board.getMacAddress() + " still unreachable, retrying", task.getError());
+                    Task.delay(retryDelay).continueWith(new Continuation<Void, Void>() {
+                        @Override
+                        public Void then(Task<Void> task) throws Exception {
+                            if (active) {
+                                reconnect(board, boardRecorder);
+                            }
+                            return null;
+                        }
+                    });
+                } else {
+                    Log.i(TAG, board.getMacAddress() + " streaming again");
+                }
+                return null;
+            }
+        });
+    }
+}
@@ -0,0 +1,165 @@
+package com.example.android.bluetoothlegatt;
+
+import com.example.android.bluetoothlegatt.core.PackedTimestamps;
+import com.example.android.bluetoothlegatt.core.SensorScale;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Sensor settings for the boards recorded with one named profile.  A sensor left out
+ * of the profile is not recorded; a profile without a mode records in the mode picked
+ * on screen.
+ *
+ * <pre>
+ * {"accel": {"odr": 100, "range": 8}, "gyro": {"odr": 100, "range": 500}, "mode": "packed"}
+ * </pre>
+ */
+public class RecordingProfile {
+    // Accelerometer and gyro ODRs the BMI160 supports, in Hz
+    private static final float[] ACCEL_ODRS = {12.5f, 25f, 50f, 100f, 200f, 400f, 800f, 1600f};
+    private static final float[] GYRO_ODRS = {25f, 50f, 100f, 200f, 400f, 800f, 1600f, 3200f};
+    private static final float[] ACCEL_RANGES = {2f, 4f, 8f, 16f};
+    private static final float[] GYRO_RANGES = {125f, 250f, 500f, 1000f, 2000f};
+
+    public static final RecordingProfile DEFAULT = new RecordingProfile("default", null, 25f, 4f, 25f, 250f);
+
+    private final String name;
+    private final BoardRecorder.Mode mode;
+    private final float accelOdr;
+    private final float accelRange;
+    private final float gyroOdr;
+    private final float gyroRange;
+
+    /**
+     * @param mode Recording mode, null to use the one picked on screen
+     * @param accelOdr Accelerometer ODR in Hz, 0 to leave the accelerometer off
+     * @param gyroOdr Gyro ODR in Hz, 0 to leave the gyro off
+     */
+    public RecordingProfile(String name, BoardRecorder.Mode mode, float accelOdr, float accelRange, float gyroOdr, float gyroRange) {
+        this.name = name;
+        this.mode = mode;
+        this.accelOdr = accelOdr;
+        this.accelRange = accelRange;
+        this.gyroOdr = gyroOdr;
+        this.gyroRange = gyroRange;
+    }
+
+    public static RecordingProfile fromJson(String name, JSONObject json) throws JSONException {
+        BoardRecorder.Mode mode = null;
+        if (json.has("mode")) {
+            String value = json.getString("mode");
+            if (value.equals("streaming")) {
+                mode = BoardRecorder.Mode.STREAMING;
+            } else if (value.equals("packed")) {
+                mode = BoardRecorder.Mode.PACKED_STREAMING;
+            } else if (value.equals("logging")) {
+                mode = BoardRecorder.Mode.LOGGING;
+            } else {
+                throw new JSONException("Unknown mode \"" + value + "\" in profile " + name);
+            }
+        }
+
+        JSONObject accel = json.optJSONObject("accel");
+        JSONObject gyro = json.optJSONObject("gyro");
+        return new RecordingProfile(name, mode,
+                accel == null ? 0 : (float) accel.getDouble("odr"), accel == null ? 0 : (float) accel.getDouble("range"),
+                gyro == null ? 0 : (float) gyro.getDouble("odr"), gyro == null ? 0 : (float) gyro.getDouble("range"));
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public BoardRecorder.Mode getMode() {
+        return mode;
+    }
+
+    public boolean isAccelEnabled() {
+        return accelOdr > 0;
+    }
+
+    public boolean isGyroEnabled() {
+        return gyroOdr > 0;
+    }
+
+    public float getAccelOdr() {
+        return accelOdr;
+    }
+
+    public float getAccelRange() {
+        return accelRange;
+    }
+
+    /**
+     * Raw int16 readings per g at the profile's accelerometer range.
+     */
+    public float getAccelScale() {
+        return SensorScale.accel(accelRange);
+    }
+
+    public float getGyroOdr() {
+        return gyroOdr;
+    }
+
+    public float getGyroRange() {
+        return gyroRange;
+    }
+
+    /**
+     * Raw int16 readings per deg/s at the profile's gyro range.
+     */
+    public float getGyroScale() {
+        return SensorScale.gyro(gyroRange);
+    }
+
+    /**
+     * BLE notifications per second a board recording in {@code mode} sends with this
+     * profile.  Logging boards send nothing until the download.
+     */
+    public float getNotificationRate(BoardRecorder.Mode mode) {
+        if (mode == BoardRecorder.Mode.LOGGING) {
+            return 0;
+        }
+        float rate = accelOdr + gyroOdr;
+        return mode == BoardRecorder.Mode.PACKED_STREAMING ? rate / PackedTimestamps.SAMPLES_PER_PACKET : rate;
+    }
+
+    /**
+     * Lists the settings the BMI160 cannot record, empty if the profile is usable.
+     */
+    public List<String> validate() {
+        List<String> problems = new ArrayList<>();
+        if (!isAccelEnabled() && !isGyroEnabled()) {
+            problems.add(name + ": no sensors enabled");
+        }
+        if (isAccelEnabled()) {
+            check(problems, "accelerometer ODR", accelOdr, ACCEL_ODRS);
+            check(problems, "accelerometer range", accelRange, ACCEL_RANGES);
+        }
+        if (isGyroEnabled()) {
+            check(problems, "gyro ODR", gyroOdr, GYRO_ODRS);
+            check(problems, "gyro range", gyroRange, GYRO_RANGES);
+        }
+        return problems;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "%s (accel %.5g Hz/%.0fg, gyro %.5g Hz/%.0f deg/s, %s)",
+                name, accelOdr, accelRange, gyroOdr, gyroRange, mode == null ? "mode from screen" : mode);
+    }
+
+    private void check(List<String> problems, String setting, float value, float[] supported) {
+        for (float s : supported) {
+            if (s == value) {
+                return;
+            }
+        }
+        problems.add(String.format(Locale.US, "%s: unsupported %s %.5g", name, setting, value));
+    }
+}
@@ -0,0 +1,217 @@
+package com.example.android.bluetoothlegatt;
+
+import com.example.android.bluetoothlegatt.core.SessionCompression;
+import com.example.android.bluetoothlegatt.core.TimelineAligner;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Named recording profiles and the boards they apply to, loaded from a JSON file.
+ * Boards are assigned a profile by MAC address, so a profile doubles as a board role
+ * (e.g. "wrist", "ankle").  Boards that are not listed use the "default" profile, or
+ * {@link RecordingProfile#DEFAULT} if the file doesn't define one.
+ *
+ * <pre>
+ * {
+ *   "maxBoardRate": 100,
+ *   "maxTotalRate": 400,
+ *   "profiles": {
+ *     "default": {"accel": {"odr": 25, "range": 4}, "gyro": {"odr": 25, "range": 250}},
+ *     "wrist": {"accel": {"odr": 100, "range": 8}, "gyro": {"odr": 100, "range": 500}, "mode": "packed"}
+ *   },
+ *   "boards": {"D5:8C:6A:12:34:56": "wrist"},
+ *   "alignment": {"rate": 100, "interpolation": "linear"},
+ *   "compression": 6,
+ *   "rotation": {"megabytes": 256, "minutes": 60}
+ * }
+ * </pre>
+ *
+ * The rates are the BLE notifications per second a single connection and the phone
+ * as a whole can sustain.  With "alignment", every session is also resampled onto one
+ * timeline at the given rows per second (up to 3200), interpolating "linear" or "nearest".  A
+ * "compression" level from 1 to 9 gzips every file of the session, 0 leaves them plain.
+ * "rotation" starts a new file for a channel once the current one reaches either
+ * limit, so multi-day recordings stay in files that can be moved and opened.
+ */
+public class RecordingProfiles {
+    public static final String DEFAULT_PROFILE = "default";
+    // Notifications per second the phone keeps up with, per board and over all boards
+    public static final float DEFAULT_MAX_BOARD_RATE = 100f;
+    public static final float DEFAULT_MAX_TOTAL_RATE = 400f;
+    // Fastest BMI160 ODR, aligning any faster only repeats samples
+    private static final float MAX_ALIGNMENT_RATE = 3200f;
+
+    private final Map<String, RecordingProfile> profiles = new HashMap<>();
+    private final Map<String, String> boards = new HashMap<>();
+    private float maxBoardRate = DEFAULT_MAX_BOARD_RATE;
+    private float maxTotalRate = DEFAULT_MAX_TOTAL_RATE;
+    private float alignmentRate;
+    private TimelineAligner.Interpolation interpolation = TimelineAligner.Interpolation.LINEAR;
+    private int compressionLevel = SessionCompression.NONE;
+    private long maxSegmentBytes;
+    private long maxSegmentDuration;
+
+    /**
+     * Loads the profiles in {@code file}, or only the built in default if it doesn't exist.
+     */
+    public static RecordingProfiles load(File file) throws IOException, JSONException {
+        RecordingProfiles result = new RecordingProfiles();
+        if (!file.isFile()) {
+            return result;
+        }
+
+        byte[] bytes = new byte[(int) file.length()];
+        InputStream in = new FileInputStream(file);
+        try {
+            int read = 0;
+            while (read < bytes.length) {
+                int n = in.read(bytes, read, bytes.length - read);
+                if (n < 0) {
+                    break;
+                }
+                read += n;
+            }
+        } finally {
+            in.close();
+        }
+
+        JSONObject json = new JSONObject(new String(bytes, "UTF-8"));
+        result.maxBoardRate = (float) json.optDouble("maxBoardRate", DEFAULT_MAX_BOARD_RATE);
+        result.maxTotalRate = (float) json.optDouble("maxTotalRate", DEFAULT_MAX_TOTAL_RATE);
+
+        JSONObject profiles = json.optJSONObject("profiles");
+        if (profiles != null) {
+            Iterator<String> names = profiles.keys();
+            while (names.hasNext()) {
+                String name = names.next();
+                result.profiles.put(name, RecordingProfile.fromJson(name, profiles.getJSONObject(name)));
+            }
+        }
+
+        JSONObject alignment = json.optJSONObject("alignment");
+        if (alignment != null) {
+            result.alignmentRate = (float) alignment.getDouble("rate");
+            if (!(result.alignmentRate > 0 && result.alignmentRate <= MAX_ALIGNMENT_RATE)) {
+                throw new JSONException("Alignment rate " + result.alignmentRate + " is not between 0 and "
+                        + MAX_ALIGNMENT_RATE);
+            }
+            String value = alignment.optString("interpolation", "linear");
+            if (value.equals("nearest")) {
+                result.interpolation = TimelineAligner.Interpolation.NEAREST;
+            } else if (!value.equals("linear")) {
+                throw new JSONException("Unknown interpolation \"" + value + "\"");
+            }
+        }
+
+        result.compressionLevel = json.optInt("compression", SessionCompression.NONE);
+        if (result.compressionLevel < SessionCompression.NONE || result.compressionLevel > SessionCompression.MAX_LEVEL) {
+            throw new JSONException("Compression level " + result.compressionLevel + " is not between 0 and 9");
+        }
+
+        JSONObject rotation = json.optJSONObject("rotation");
+        if (rotation != null) {
+            result.maxSegmentBytes = (long) (rotation.optDouble("megabytes", 0) * 1024 * 1024);
+            result.maxSegmentDuration = (long) (rotation.optDouble("minutes", 0) * 60e9);
+        }
+
+        JSONObject boards = json.optJSONObject("boards");
+        if (boards != null) {
+            Iterator<String> macAddresses = boards.keys();
+            while (macAddresses.hasNext()) {
+                String macAddress = macAddresses.next();
+                String name = boards.getString(macAddress);
+                if (!result.profiles.containsKey(name)) {
+                    throw new JSONException("Board " + macAddress + " uses unknown profile " + name);
+                }
+                result.boards.put(macAddress.toUpperCase(Locale.US), name);
+            }
+        }
+        return result;
+    }
+
+    public RecordingProfile getProfile(String macAddress) {
+        String name = boards.get(macAddress.toUpperCase(Locale.US));
+        RecordingProfile profile = profiles.get(name == null ? DEFAULT_PROFILE : name);
+        return profile == null ? RecordingProfile.DEFAULT : profile;
+    }
+
+    public float getMaxBoardRate() {
+        return maxBoardRate;
+    }
+
+    public float getMaxTotalRate() {
+        return maxTotalRate;
+    }
+
+    /**
+     * Rows per second of the aligned session matrix, 0 if sessions are not aligned.
+     */
+    public float getAlignmentRate() {
+        return alignmentRate;
+    }
+
+    public TimelineAligner.Interpolation getInterpolation() {
+        return interpolation;
+    }
+
+    /**
+     * Deflate level of the session files from 1 to 9, or {@link SessionCompression#NONE}.
+     */
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    /**
+     * Bytes after which a channel file is rotated, 0 for no limit.
+     */
+    public long getMaxSegmentBytes() {
+        return maxSegmentBytes;
+    }
+
+    /**
+     * Nanoseconds of samples after which a channel file is rotated, 0 for no limit.
+     */
+    public long getMaxSegmentDuration() {
+        return maxSegmentDuration;
+    }
+
+    /**
+     * Checks the profiles of the boards about to be recorded, and that the notifications
+     * they will send fit in the BLE bandwidth of each link and of the phone.
+     *
+     * @param modes Recording mode of each board, keyed by MAC address
+     * @return Problems found, empty if the session can be recorded
+     */
+    public List<String> validate(Map<String, BoardRecorder.Mode> modes) {
+        List<String> problems = new ArrayList<>();
+        float total = 0;
+        for (Map.Entry<String, BoardRecorder.Mode> board : modes.entrySet()) {
+            RecordingProfile profile = getProfile(board.getKey());
+            problems.addAll(profile.validate());
+
+            float rate = profile.getNotificationRate(board.getValue());
+            if (rate > maxBoardRate) {
+                problems.add(String.format(Locale.US, "%s: %.0f notifications/s with profile %s exceeds the %.0f/s a link sustains",
+                        board.getKey(), rate, profile.getName(), maxBoardRate));
+            }
+            total += rate;
+        }
+        if (total > maxTotalRate) {
+            problems.add(String.format(Locale.US, "%.0f notifications/s over all boards exceeds the %.0f/s the phone sustains",
+                    total, maxTotalRate));
+        }
+        return problems;
+    }
+}
@@ -0,0 +1,582 @@
+package com.example.android.bluetoothlegatt;
+
+import android.app.Notification;
+import android.app.PendingIntent;
+import android.app.Service;
+import android.bluetooth.BluetoothManager;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.ServiceConnection;
+import android.media.MediaScannerConnection;
+import android.os.Binder;
+import android.os.Environment;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.IBinder;
+import android.os.Process;
+import android.util.Log;
+
+import com.example.android.bluetoothlegatt.core.RecordingWriter;
+import com.example.android.bluetoothlegatt.core.SensorChannel;
+import com.example.android.bluetoothlegatt.core.SessionAligner;
+import com.example.android.bluetoothlegatt.core.SessionCompression;
+import com.example.android.bluetoothlegatt.core.SessionExporter;
+import com.example.android.bluetoothlegatt.core.SessionHeader;
+import com.example.android.bluetoothlegatt.core.SessionJournal;
+
+import com.mbientlab.metawear.MetaWearBoard;
+import com.mbientlab.metawear.android.BtleService;
+import com.mbientlab.metawear.module.Logging;
+
+import org.json.JSONException;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import bolts.Continuation;
+import bolts.Task;
+
+/**
+ * Foreground service that owns the connected boards and the recording pipeline, so a
+ * session survives the activity being rotated, paused or destroyed.  Channel files are
+ * written on a dedicated high priority thread, and finished sessions are exported on a
+ * background one, so neither competes with the UI.  The activity is a client of the
+ * {@link LocalBinder}; events come back through a {@link Listener} on the main thread.
+ */
+public class RecordingService extends Service implements ServiceConnection {
+    public interface Listener {
+        void onDownloadProgress(int percent);
+
+        /** Called as each file of a session export is written, reaching 100 when it's done. */
+        void onExportProgress(String name, int percent);
+
+        /** Called once a session's files have been written and exported. */
+        void onSessionSaved(List<File> files);
+
+        void onSessionRecovered(List<File> files);
+    }
+
+    public class LocalBinder extends Binder {
+        public RecordingService getService() {
+            return RecordingService.this;
+        }
+    }
+
+    private final static String TAG = RecordingService.class.getSimpleName();
+    private static final int NOTIFICATION_ID = 1;
+
+    // Connection attempts in flight at once, and retry policy for each board.
+    private static final int MAX_CONCURRENT_CONNECTIONS = 4;
+    private static final long CONNECT_TIMEOUT = 10000;
+    private static final int CONNECT_ATTEMPTS = 4;
+    private static final long CONNECT_BACKOFF = 1000;
+    // Pause between reconnect rounds for a board that dropped mid-recording.
+    private static final long RECONNECT_DELAY = 5000;
+    // Pushes recorded samples to disk every second.
+    private static final long FLUSH_INTERVAL = 1000;
+    // Samples each channel can queue while the writer is busy, ~20 s at 800 Hz.
+    private static final int RING_CAPACITY = 16384;
+    // Size of each crash recovery journal segment.
+    private static final int JOURNAL_SEGMENT_SIZE = 8 * 1024 * 1024;
+    // Sample lines logged per channel each second in debug builds.
+    private static final int DEBUG_LINES_PER_SECOND = BuildConfig.DEBUG ? 2 : 0;
+
+    private final IBinder binder = new LocalBinder();
+    private final Set<MetaWearBoard> metaWearBoards = Collections.synchronizedSet(new HashSet<MetaWearBoard>());
+    private final HashMap<MetaWearBoard, BoardRecorder> boardRecorders = new HashMap<>();
+    private Handler mainHandler;
+    private HandlerThread writerThread;
+    private HandlerThread exportThread;
+    private Handler exportHandler;
+    private ExecutorService exportExecutor;
+    private volatile SessionExporter sessionExporter;
+    private BtleService.LocalBinder serviceBinder;
+    private ConnectionManager connectionManager;
+    private RecordingWriter recordingWriter;
+    private ReconnectSupervisor reconnectSupervisor;
+    private Listener listener;
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        mainHandler = new Handler(getMainLooper());
+        // Draining the channel rings must keep up with the boards whatever the UI is doing
+        writerThread = new HandlerThread("RecordingWriter", Process.THREAD_PRIORITY_URGENT_AUDIO);
+        writerThread.start();
+        exportThread = new HandlerThread("SessionExport", Process.THREAD_PRIORITY_BACKGROUND);
+        exportThread.start();
+        exportHandler = new Handler(exportThread.getLooper());
+        // The export thread hands every output file of a session to its own worker
+        exportExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                return new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        runnable.run();
+                    }
+                }, "SessionExportWorker");
+            }
+        });
+
+        getApplicationContext().bindService(new Intent(this, BtleService.class), this, Context.BIND_AUTO_CREATE);
+        recoverSession();
+    }
+
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        return START_NOT_STICKY;
+    }
+
+    @Override
+    public IBinder onBind(Intent intent) {
+        return binder;
+    }
+
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        // A session still running is closed here, as the boards and writer would outlive us
+        stopRecording(false);
+        getApplicationContext().unbindService(this);
+        // Lets the writer finish the session it is draining before the thread goes
+        writerThread.quitSafely();
+        exportThread.quitSafely();
+        exportExecutor.shutdown();
+    }
+
+    @Override
+    public void onServiceConnected(ComponentName componentName, IBinder iBinder) {
+        serviceBinder = (BtleService.LocalBinder) iBinder;
+        connectionManager = new ConnectionManager(serviceBinder, ((BluetoothManager) getSystemService(Context.BLUETOOTH_SERVICE)).getAdapter(),
+                MAX_CONCURRENT_CONNECTIONS, CONNECT_TIMEOUT, CONNECT_ATTEMPTS, CONNECT_BACKOFF);
+    }
+
+    @Override
+    public void onServiceDisconnected(ComponentName componentName) { }
+
+    /**
+     * @param listener Receives the service's events on the main thread, null to stop
+     */
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * @return The connection manager, null until the MetaWear service is bound
+     */
+    public ConnectionManager getConnectionManager() {
+        return connectionManager;
+    }
+
+    public void addBoard(MetaWearBoard board) {
+        metaWearBoards.add(board);
+    }
+
+    public boolean isRecording() {
+        return recordingWriter != null;
+    }
+
+    /**
+     * Starts recording every connected board with its profile.
+     *
+     * @param screenMode Mode for boards whose profile doesn't set one
+     * @return Problems that kept the session from starting, empty if it started
+     */
+    public List<String> startRecording(BoardRecorder.Mode screenMode) {
+        List<String> problems = new ArrayList<>();
+        if (isRecording()) {
+            return problems;
+        }
+        if (connectionManager == null) {
+            problems.add(getString(R.string.error_service_not_ready));
+            return problems;
+        }
+
+        RecordingProfiles profiles;
+        try {
+            profiles = RecordingProfiles.load(getProfilesFile());
+        }
+        catch (IOException | JSONException e) {
+            Log.e(TAG, "Failed to load recording profiles", e);
+            problems.add(e.getMessage());
+            return problems;
+        }
+
+        List<MetaWearBoard> boards;
+        synchronized (metaWearBoards) {
+            boards = new ArrayList<>(metaWearBoards);
+        }
+        HashMap<String, BoardRecorder.Mode> modes = new HashMap<>();
+        for (MetaWearBoard board : boards) {
+            BoardRecorder.Mode mode = profiles.getProfile(board.getMacAddress()).getMode();
+            modes.put(board.getMacAddress(), mode == null ? screenMode : mode);
+        }
+        problems.addAll(profiles.validate(modes));
+        if (!problems.isEmpty()) {
+            for (String problem : problems) {
+                Log.e(TAG, problem);
+            }
+            return problems;
+        }
+
+        // Downloaded logs arrive a board at a time, so those sessions are aligned afterwards
+        SessionAligner sessionAligner = null;
+        if (profiles.getAlignmentRate() > 0) {
+            sessionAligner = new SessionAligner(profiles.getAlignmentRate(), profiles.getInterpolation(),
+                    profiles.getCompressionLevel());
+        }
+        final SessionAligner offlineAligner = modes.containsValue(BoardRecorder.Mode.LOGGING) ? sessionAligner : null;
+        final int compressionLevel = profiles.getCompressionLevel();
+
+        final RecordingWriter writer = new RecordingWriter(getRecordingDirectory(), FLUSH_INTERVAL, RING_CAPACITY);
+        recordingWriter = writer;
+        recordingWriter.setCompression(compressionLevel);
+        recordingWriter.setRotation(profiles.getMaxSegmentBytes(), profiles.getMaxSegmentDuration());
+        recordingWriter.setListener(new RecordingWriter.Listener() {
+            @Override
+            public void onFinished(final List<File> files) {
+                if (writer.hasWriteFailed()) {
+                    Log.e(TAG, "Session files could not be fully written, their journal is kept for recovery");
+                }
+                exportHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        List<File> exported = exportSession(files, offlineAligner, compressionLevel);
+                        scanFiles(exported);
+                        notifySessionSaved(exported);
+                    }
+                });
+            }
+        });
+        if (sessionAligner != null && offlineAligner == null) {
+            recordingWriter.setAligner(sessionAligner);
+        }
+
+        try {
+            // A directory per session, so recovering an older one never touches this one's
+            File journalDirectory = new File(getJournalDirectory(), "session-" + System.currentTimeMillis());
+            recordingWriter.setJournal(new SessionJournal(journalDirectory, JOURNAL_SEGMENT_SIZE));
+        }
+        catch (IOException e) {
+            Log.w(TAG, "Recording without crash recovery journal", e);
+        }
+
+        reconnectSupervisor = new ReconnectSupervisor(connectionManager, RECONNECT_DELAY);
+        boardRecorders.clear();
+        for (final MetaWearBoard board : boards) {
+            RecordingProfile profile = profiles.getProfile(board.getMacAddress());
+            SensorChannel accelChannel = null;
+            SensorChannel gyroChannel = null;
+            if (profile.isAccelEnabled()) {
+                accelChannel = recordingWriter.openChannel(new SessionHeader(board.getMacAddress(), "ACCEL",
+                        profile.getAccelOdr(), profile.getAccelRange(), profile.getAccelScale()));
+            }
+            if (profile.isGyroEnabled()) {
+                gyroChannel = recordingWriter.openChannel(new SessionHeader(board.getMacAddress(), "GYRO",
+                        profile.getGyroOdr(), profile.getGyroRange(), profile.getGyroScale()));
+            }
+
+            BoardRecorder boardRecorder = new BoardRecorder(modes.get(board.getMacAddress()), profile,
+                    accelChannel, gyroChannel, DEBUG_LINES_PER_SECOND);
+            boardRecorders.put(board, boardRecorder);
+            Log.i(TAG, board.getMacAddress() + " recording with " + profile);
+            boardRecorder.start(board).continueWith(new Continuation<Void, Void>() {
+                @Override
+                public Void then(Task<Void> task) throws Exception {
+                    if (task.isFaulted()) {
+                        Log.e(TAG, "Failed to start recording on " + board.getMacAddress(), task.getError());
+                    }
+                    return null;
+                }
+            });
+            // Logged data stays on the boards while they are away, only streams need supervising
+            if (boardRecorder.getMode() != BoardRecorder.Mode.LOGGING) {
+                reconnectSupervisor.watch(board, boardRecorder);
+            }
+        }
+
+        // Started so the session outlives the activity unbinding
+        startService(new Intent(this, RecordingService.class));
+        startForeground(NOTIFICATION_ID, buildNotification(getString(R.string.notification_recording, boards.size())));
+        final Handler writerHandler = new Handler(writerThread.getLooper());
+        recordingWriter.start(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                writerHandler.post(command);
+            }
+        });
+        return problems;
+    }
+
+    /**
+     * Stops the sensors, downloads the logs of boards that were logging, and closes the
+     * session.  Completion is reported through {@link Listener#onSessionSaved}.
+     */
+    public void stopRecording() {
+        stopRecording(true);
+    }
+
+    /**
+     * @param download Whether to download the logs of logging boards.  Without, they
+     *                 are stopped like the streaming ones and their logs stay on them.
+     */
+    private void stopRecording(boolean download) {
+        if (reconnectSupervisor != null) {
+            reconnectSupervisor.stop();
+            reconnectSupervisor = null;
+        }
+
+        if (recordingWriter == null) {
+            return;
+        }
+        RecordingWriter writer = recordingWriter;
+        recordingWriter = null;
+
+        List<MetaWearBoard> boards;
+        synchronized (metaWearBoards) {
+            boards = new ArrayList<>(metaWearBoards);
+        }
+        List<MetaWearBoard> loggingBoards = new ArrayList<>();
+        for (MetaWearBoard board : boards) {
+            BoardRecorder boardRecorder = boardRecorders.get(board);
+            if (boardRecorder != null && boardRecorder.getMode() == BoardRecorder.Mode.LOGGING) {
+                if (download) {
+                    loggingBoards.add(board);
+                    continue;
+                }
+                Log.w(TAG, "Leaving the log on " + board.getMacAddress() + ", the service is going away");
+            }
+            if (boardRecorder != null && board.isConnected()) {
+                boardRecorder.stop(board);
+            }
+            disconnect(board);
+        }
+
+        if (!download) {
+            writer.stop();
+        } else if (loggingBoards.isEmpty()) {
+            finishRecording(writer);
+        } else {
+            downloadLogs(writer, loggingBoards);
+        }
+    }
+
+    public boolean isExporting() {
+        return sessionExporter != null;
+    }
+
+    /**
+     * Stops exporting the current session.  The binary session files are kept, along
+     * with any export files that were already complete.
+     */
+    public void cancelExport() {
+        SessionExporter exporter = sessionExporter;
+        if (exporter != null) {
+            exporter.cancel();
+        }
+    }
+
+    private void disconnect(MetaWearBoard board) {
+        board.disconnectAsync().continueWith(new Continuation<Void, Void>() {
+            @Override
+            public Void then(Task<Void> task) throws Exception {
+                Log.i(TAG, "Disconnected");
+                return null;
+            }
+        });
+    }
+
+    private void finishRecording(RecordingWriter writer) {
+        startForeground(NOTIFICATION_ID, buildNotification(getString(R.string.notification_exporting)));
+        for (SensorChannel channel : writer.getRegistry().getChannels()) {
+            Log.i(TAG, channel.toString());
+        }
+        writer.stop();
+    }
+
+    // Pulls the recording off every board's flash, reconnecting boards that wandered off
+    private void downloadLogs(final RecordingWriter writer, List<MetaWearBoard> boards) {
+        startForeground(NOTIFICATION_ID, buildNotification(getString(R.string.download_progress, 0)));
+        final float[] progress = new float[boards.size()];
+        List<Task<Void>> downloads = new ArrayList<>();
+        int index = 0;
+        for (final MetaWearBoard board : boards) {
+            final int boardIndex = index++;
+            final BoardRecorder boardRecorder = boardRecorders.get(board);
+            final Logging.LogDownloadUpdateHandler progressHandler = new Logging.LogDownloadUpdateHandler() {
+                @Override
+                public void receivedUpdate(long nEntriesLeft, long totalEntries) {
+                    updateDownloadProgress(progress, boardIndex,
+                            totalEntries == 0 ? 1f : 1f - (float) nEntriesLeft / totalEntries);
+                }
+            };
+            Task<Void> connected = board.isConnected() ? Task.<Void>forResult(null) : connectionManager.connectWithRetry(board);
+            downloads.add(connected.onSuccessTask(new Continuation<Void, Task<Void>>() {
+                @Override
+                public Task<Void> then(Task<Void> task) throws Exception {
+                    boardRecorder.stop(board);
+                    // A failed download keeps the log on the board, so reconnect and try again
+                    return connectionManager.runWithRetry(board, new ConnectionManager.Operation() {
+                        @Override
+                        public Task<Void> run() {
+                            return boardRecorder.download(board, progressHandler);
+                        }
+                    });
+                }
+            }).continueWith(new Continuation<Void, Void>() {
+                @Override
+                public Void then(Task<Void> task) throws Exception {
+                    if (task.isFaulted()) {
+                        Log.e(TAG, "Failed to download log from " + board.getMacAddress(), task.getError());
+                    }
+                    disconnect(board);
+                    return null;
+                }
+            }));
+        }
+
+        Task.whenAll(downloads).continueWith(new Continuation<Void, Void>() {
+            @Override
+            public Void then(Task<Void> task) throws Exception {
+                finishRecording(writer);
+                return null;
+            }
+        }, Task.UI_THREAD_EXECUTOR);
+    }
+
+    private void updateDownloadProgress(float[] progress, int boardIndex, float boardProgress) {
+        float total = 0;
+        synchronized (progress) {
+            progress[boardIndex] = boardProgress;
+            for (float p : progress) {
+                total += p;
+            }
+        }
+        final int percent = Math.round(100 * total / progress.length);
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (listener != null) {
+                    listener.onDownloadProgress(percent);
+                }
+            }
+        });
+    }
+
+    private Notification buildNotification(String text) {
+        PendingIntent contentIntent = PendingIntent.getActivity(this, 0, new Intent(this, DeviceScanActivity.class), 0);
+        return new Notification.Builder(this)
+                .setContentTitle(getString(R.string.app_name))
+                .setContentText(text)
+                .setSmallIcon(R.drawable.ic_launcher)
+                .setOngoing(true)
+                .setContentIntent(contentIntent)
+                .build();
+    }
+
+    private void notifySessionSaved(final List<File> files) {
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                // Nothing left to protect, unless a new session started during the export
+                if (!isRecording()) {
+                    stopForeground(true);
+                    stopSelf();
+                }
+                if (listener != null) {
+                    listener.onSessionSaved(files);
+                }
+            }
+        });
+    }
+
+    private File getRecordingDirectory() {
+        return new File(Environment.getExternalStorageDirectory()
+            + File.separator + "PERL LAB");
+    }
+
+    private File getProfilesFile() {
+        return new File(getRecordingDirectory(), "profiles.json");
+    }
+
+    private File getJournalDirectory() {
+        return new File(getRecordingDirectory(), ".journal");
+    }
+
+    // Restores the sessions of recordings that were interrupted by the app being killed.
+    // The journals are listed before any new session can start, so only those are touched.
+    private void recoverSession() {
+        final List<File> journals = SessionJournal.list(getJournalDirectory());
+        for (final File journalDirectory : journals) {
+            exportHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        final List<File> sessions = exportSession(
+                                SessionJournal.recover(journalDirectory, getRecordingDirectory()), null,
+                                SessionCompression.NONE);
+                        scanFiles(sessions);
+                        mainHandler.post(new Runnable() {
+                            @Override
+                            public void run() {
+                                if (listener != null) {
+                                    listener.onSessionRecovered(sessions);
+                                }
+                            }
+                        });
+                    }
+                    catch (IOException e) {
+                        Log.e(TAG, "Failed to recover session", e);
+                    }
+                }
+            });
+        }
+    }
+
+    // Writes the text, merged and aligned files of a session in parallel
+    private List<File> exportSession(List<File> sessions, SessionAligner offlineAligner, int compressionLevel) {
+        sessionExporter = new SessionExporter(exportExecutor, compressionLevel, new SessionExporter.Listener() {
+            @Override
+            public void onProgress(final String name, final int percent) {
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (listener != null) {
+                            listener.onExportProgress(name, percent);
+                        }
+                    }
+                });
+            }
+        });
+        long start = System.nanoTime();
+        List<File> files = sessionExporter.export(sessions, offlineAligner);
+        Log.i(TAG, String.format(Locale.US, "Exported %d files in %.1f s%s", files.size() - sessions.size(),
+                (System.nanoTime() - start) / 1e9, sessionExporter.isCancelled() ? ", cancelled" : ""));
+        sessionExporter = null;
+        return files;
+    }
+
+    private void scanFiles(List<File> files) {
+        // Discover new files
+        String[] paths = new String[files.size()];
+        for (int i = 0; i < paths.length; i++) {
+            paths[i] = files.get(i).getAbsolutePath();
+            Log.i(TAG, "Filename: " + paths[i]);
+        }
+        MediaScannerConnection.scanFile(getApplicationContext(), paths, null, null);
+    }
+}
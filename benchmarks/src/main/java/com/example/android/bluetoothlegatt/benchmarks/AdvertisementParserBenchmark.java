@@ -0,0 +1,157 @@
+package com.example.android.bluetoothlegatt.benchmarks;
+
+import com.example.android.bluetoothlegatt.core.AdvertisementParser;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Filtering scan records for the MetaWear service: {@link AdvertisementParser} against
+ * the ByteBuffer and {@code UUID.fromString} parsing onLeScan used to do, kept below
+ * as {@link #legacyMatches}.  The payloads are typical advertisements laid out by
+ * hand from the Bluetooth and beacon specs rather than captured from devices, padded
+ * to the 62 bytes Android hands over.  Scores are scan records per second.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class AdvertisementParserBenchmark {
+    private static final UUID METAWEAR_SERVICE = UUID.fromString("326a9000-85cb-9195-d9dd-464cfbbae75a");
+    private static final int SCAN_RECORD_SIZE = 62;
+
+    @Param({"metawear", "ibeacon", "eddystone", "uuid16"})
+    public String payload;
+
+    private byte[] scanRecord;
+    private byte[] truncated;
+    private final Set<UUID> services = new HashSet<>(Collections.singleton(METAWEAR_SERVICE));
+    private final AdvertisementParser parser = new AdvertisementParser(services);
+
+    @Setup
+    public void setUp() {
+        scanRecord = scanRecord(payload);
+        // Length field of the first structure claims more bytes than the record has
+        truncated = new byte[] {0x02, 0x01, 0x06, 0x11, 0x07, (byte) 0x5a, (byte) 0xe7, (byte) 0xba};
+    }
+
+    @Benchmark
+    public boolean advertisementParser() {
+        return parser.matches(scanRecord);
+    }
+
+    @Benchmark
+    public boolean legacyParser() {
+        return legacyMatches(scanRecord, services);
+    }
+
+    /**
+     * Only the new parser, the legacy one throws BufferUnderflowException here.
+     */
+    @Benchmark
+    public boolean advertisementParserTruncated() {
+        return parser.matches(truncated);
+    }
+
+    static byte[] scanRecord(String payload) {
+        ByteBuffer record = ByteBuffer.allocate(SCAN_RECORD_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        // Flags: LE general discoverable, BR/EDR not supported
+        record.put(new byte[] {0x02, 0x01, 0x06});
+        switch (payload) {
+            case "metawear":
+                record.put((byte) 0x11).put((byte) 0x07)
+                        .putLong(METAWEAR_SERVICE.getLeastSignificantBits())
+                        .putLong(METAWEAR_SERVICE.getMostSignificantBits());
+                putName(record, "MetaWear");
+                break;
+            case "ibeacon":
+                // Apple manufacturer data: type 0x02, length 0x15, UUID, major, minor, tx power
+                record.put(new byte[] {0x1a, (byte) 0xff, 0x4c, 0x00, 0x02, 0x15});
+                record.order(ByteOrder.BIG_ENDIAN)
+                        .putLong(0xf7826da64fa24e98L).putLong(0x8024bc5b71e0893eL)
+                        .putShort((short) 1).putShort((short) 42).put((byte) -59);
+                break;
+            case "eddystone":
+                record.put(new byte[] {0x03, 0x03, (byte) 0xaa, (byte) 0xfe});
+                // Service data for 0xfeaa, a UID frame: type, tx power, 10 byte namespace, 6 byte instance, 2 reserved
+                record.put(new byte[] {0x17, 0x16, (byte) 0xaa, (byte) 0xfe, 0x00, (byte) 0xee});
+                for (int i = 0; i < 18; i++) {
+                    record.put((byte) (0x10 + i));
+                }
+                break;
+            case "uuid16":
+                // Heart rate, battery and device information services
+                record.put(new byte[] {0x07, 0x03, 0x0d, 0x18, 0x0f, 0x18, 0x0a, 0x18});
+                putName(record, "HRM-Pro");
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown payload: " + payload);
+        }
+        return record.array();
+    }
+
+    private static void putName(ByteBuffer record, String name) {
+        record.put((byte) (name.length() + 1)).put((byte) 0x09);
+        for (int i = 0; i < name.length(); i++) {
+            record.put((byte) name.charAt(i));
+        }
+    }
+
+    /**
+     * onLeScan's parsing before {@link AdvertisementParser}, returning instead of calling
+     * foundDevice.
+     */
+    static boolean legacyMatches(byte[] scanRecord, Set<UUID> filterServiceUuids) {
+        ByteBuffer buffer= ByteBuffer.wrap(scanRecord).order(ByteOrder.LITTLE_ENDIAN);
+        boolean stop= false;
+        while (!stop && buffer.remaining() > 2) {
+            byte length = buffer.get();
+            if (length == 0) break;
+
+            byte type = buffer.get();
+            switch (type) {
+                case 0x02: // Partial list of 16-bit UUIDs
+                case 0x03: // Complete list of 16-bit UUIDs
+                    while (length >= 2) {
+                        UUID serviceUUID = UUID.fromString(String.format("%08x-0000-1000-8000-00805f9b34fb", buffer.getShort()));
+                        stop = stop || filterServiceUuids.isEmpty() || filterServiceUuids.contains(serviceUUID);
+                        length -= 2;
+                    }
+                    break;
+
+                case 0x06: // Partial list of 128-bit UUIDs
+                case 0x07: // Complete list of 128-bit UUIDs
+                    while (!stop && length >= 16) {
+                        long lsb= buffer.getLong(), msb= buffer.getLong();
+                        stop= filterServiceUuids.isEmpty() || filterServiceUuids.contains(new UUID(msb, lsb));
+                        length -= 16;
+                    }
+                    break;
+
+                default:
+                    buffer.position(buffer.position() + length - 1);
+                    break;
+            }
+        }
+        return stop || filterServiceUuids.isEmpty();
+    }
+}
@@ -0,0 +1,118 @@
+package com.example.android.bluetoothlegatt.benchmarks;
+
+import com.example.android.bluetoothlegatt.core.BinarySampleSink;
+import com.example.android.bluetoothlegatt.core.SampleBuffer;
+import com.example.android.bluetoothlegatt.core.SampleSink;
+import com.example.android.bluetoothlegatt.core.SessionCompression;
+import com.example.android.bluetoothlegatt.core.SessionHeader;
+import com.example.android.bluetoothlegatt.core.TextSampleSink;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Recording one minute of accelerometer data per compression level, output data rate
+ * and file format, fed the way the recording writer does: a batch every 50 ms and a
+ * flush every second.  Scores are minutes written per second, and the "bytes" and
+ * "samples" counters give the file size per sample.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class CompressionBenchmark {
+    private static final int BATCHES_PER_SECOND = 20;
+
+    @Param({"0", "1", "6", "9"})
+    public int level;
+
+    @Param({"25", "100", "800"})
+    public int odr;
+
+    @Param({"binary", "text"})
+    public String format;
+
+    private File directory;
+    private SampleBuffer[] batches;
+    private SessionHeader header;
+
+    /**
+     * Totals over an iteration, JMH reports them next to the score.
+     */
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Output {
+        public long bytes;
+        public long samples;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            bytes = 0;
+            samples = 0;
+        }
+    }
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("compression").toFile();
+        header = new SessionHeader("D5:8C:6A:12:34:56", "ACCEL", odr, 4, Samples.ACCEL_SCALE);
+
+        SampleBuffer minute = Samples.accelerometer(odr, odr * 60, 1);
+        int batchSize = Math.max(1, odr / BATCHES_PER_SECOND);
+        batches = new SampleBuffer[(minute.size() + batchSize - 1) / batchSize];
+        for (int i = 0; i < minute.size(); i++) {
+            if (i % batchSize == 0) {
+                batches[i / batchSize] = new SampleBuffer();
+            }
+            batches[i / batchSize].add(minute.getTimestamp(i), minute.getX(i), minute.getY(i), minute.getZ(i));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        directory.delete();
+    }
+
+    @Benchmark
+    public void recordMinute(Output output) throws IOException {
+        SampleSink sink;
+        if (format.equals("binary")) {
+            sink = new BinarySampleSink(directory, header, level);
+        } else {
+            sink = new TextSampleSink(new File(directory, "minute.txt" + SessionCompression.extension(level)), level);
+        }
+        int batchesPerFlush = Math.max(1, Math.min(BATCHES_PER_SECOND, odr));
+        for (int i = 0; i < batches.length; i++) {
+            sink.write(batches[i]);
+            output.samples += batches[i].size();
+            if ((i + 1) % batchesPerFlush == 0) {
+                sink.flush();
+            }
+        }
+        sink.close();
+
+        for (SampleSink.Segment segment : sink.getSegments()) {
+            output.bytes += segment.file.length();
+            segment.file.delete();
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.example.android.bluetoothlegatt.benchmarks;
+
+import com.example.android.bluetoothlegatt.core.SampleBuffer;
+import com.example.android.bluetoothlegatt.core.TextSampleSink;
+import com.example.android.bluetoothlegatt.core.TimestampFormatter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writing samples as text lines: the old SensorRecord.toString() concatenation of
+ * the timestamp string, formatted when the sample arrived, and the three floats,
+ * through a BufferedWriter the way the Stop button used to, against
+ * {@link TextSampleSink} appending the fields into one reused builder and encoding
+ * them straight into a direct buffer.  The old path's timestamps are formatted in
+ * setup, as that cost was paid while streaming.  Both write to /dev/null so the
+ * scores are formatting cost only, in lines per second.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class CsvFormatBenchmark {
+    private static final int BATCH = 4096;
+    private static final File DEV_NULL = new File("/dev/null");
+
+    private SampleBuffer samples;
+    private String[] timestamps;
+    private Writer writer;
+    private TextSampleSink sink;
+
+    @Setup
+    public void setUp() throws IOException {
+        samples = Samples.accelerometer(100, BATCH, 1);
+        timestamps = new String[samples.size()];
+        TimestampFormatter formatter = new TimestampFormatter();
+        for (int i = 0; i < timestamps.length; i++) {
+            timestamps[i] = formatter.format(samples.getTimestamp(i));
+        }
+        writer = new BufferedWriter(new FileWriter(DEV_NULL));
+        sink = new TextSampleSink(DEV_NULL);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        writer.close();
+        sink.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void recordToString() throws IOException {
+        for (int i = 0; i < samples.size(); i++) {
+            writer.write(timestamps[i] + ", " + samples.getX(i) + ", " + samples.getY(i) + ", "
+                    + samples.getZ(i));
+            writer.write('\n');
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void textSampleSink() throws IOException {
+        sink.write(samples);
+    }
+}
@@ -0,0 +1,96 @@
+package com.example.android.bluetoothlegatt.benchmarks;
+
+import com.example.android.bluetoothlegatt.core.SampleBuffer;
+import com.example.android.bluetoothlegatt.core.SampleRing;
+import com.example.android.bluetoothlegatt.core.SensorChannel;
+import com.example.android.bluetoothlegatt.core.SensorRecord;
+import com.example.android.bluetoothlegatt.core.SessionHeader;
+import com.example.android.bluetoothlegatt.core.SessionMetadata;
+import com.example.android.bluetoothlegatt.core.TextSampleSink;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of taking in one sample: a {@link SensorRecord} object per sample as the app
+ * used to keep, against the primitive {@link SampleBuffer} columns and the full
+ * {@link SensorChannel} path the subscribers use now (ring, metrics and draining).
+ * Scores are samples per second.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class IngestionBenchmark {
+    private static final int BATCH = 4096;
+
+    private final long[] timestamps = new long[BATCH];
+    private final float[] xs = new float[BATCH];
+    private final float[] ys = new float[BATCH];
+    private final float[] zs = new float[BATCH];
+    private final SampleBuffer buffer = new SampleBuffer();
+    private final SampleBuffer drained = new SampleBuffer();
+    private SensorChannel channel;
+
+    @Setup
+    public void setUp() {
+        SampleBuffer samples = Samples.accelerometer(100, BATCH, 1);
+        for (int i = 0; i < BATCH; i++) {
+            timestamps[i] = samples.getTimestamp(i);
+            xs[i] = samples.getX(i);
+            ys[i] = samples.getY(i);
+            zs[i] = samples.getZ(i);
+        }
+        SessionHeader header = new SessionHeader("D5:8C:6A:12:34:56", "ACCEL", 100, 4, Samples.ACCEL_SCALE);
+        // The sink only sees samples on the writer thread, never from add()
+        channel = new SensorChannel(header, new SampleRing(BATCH), new TextSampleSink(new File("/dev/null")),
+                new SessionMetadata());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public List<SensorRecord> sensorRecords() {
+        List<SensorRecord> records = new ArrayList<>();
+        for (int i = 0; i < BATCH; i++) {
+            records.add(new SensorRecord(timestamps[i], xs[i], ys[i], zs[i]));
+        }
+        return records;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public SampleBuffer sampleBuffer() {
+        buffer.clear();
+        for (int i = 0; i < BATCH; i++) {
+            buffer.add(timestamps[i], xs[i], ys[i], zs[i]);
+        }
+        return buffer;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public SampleBuffer sensorChannel() {
+        for (int i = 0; i < BATCH; i++) {
+            channel.add(timestamps[i], xs[i], ys[i], zs[i]);
+        }
+        drained.clear();
+        channel.getRing().drainTo(drained, BATCH);
+        return drained;
+    }
+}
@@ -0,0 +1,181 @@
+package com.example.android.bluetoothlegatt.benchmarks;
+
+import com.example.android.bluetoothlegatt.core.BoardSimulator;
+import com.example.android.bluetoothlegatt.core.RecordingWriter;
+import com.example.android.bluetoothlegatt.core.SampleSink;
+import com.example.android.bluetoothlegatt.core.SensorChannel;
+import com.example.android.bluetoothlegatt.core.SensorScale;
+import com.example.android.bluetoothlegatt.core.SessionHeader;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records a session from simulated boards through the same {@link RecordingWriter}
+ * setup as RecordingService, then reports how many samples the pipeline lost.  Exits
+ * with status 1 if any sample delivered to a channel did not make it into a file, so
+ * it can gate CI.  Settings are given as key=value arguments:
+ *
+ * <pre>
+ * boards=20 odr=800 seconds=30 packed=false compression=0 disconnects=false
+ * loss=0.001 bursts=0.01 jitter=2 seed=1
+ * </pre>
+ */
+public class LoadTest {
+    // Same as RecordingService
+    private static final long FLUSH_INTERVAL = 1000;
+    private static final int RING_CAPACITY = 16384;
+    private static final float ACCEL_RANGE = 4;
+    private static final float GYRO_RANGE = 2000;
+    private static final long REPORT_INTERVAL = 5000;
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int split = arg.indexOf('=');
+            if (split < 0) {
+                System.err.println("Expected key=value, got " + arg);
+                System.exit(2);
+            }
+            options.put(arg.substring(0, split), arg.substring(split + 1));
+        }
+        int boards = Integer.parseInt(option(options, "boards", "20"));
+        float odr = Float.parseFloat(option(options, "odr", "800"));
+        int seconds = Integer.parseInt(option(options, "seconds", "30"));
+        boolean packed = Boolean.parseBoolean(option(options, "packed", "false"));
+        int compression = Integer.parseInt(option(options, "compression", "0"));
+        boolean disconnects = Boolean.parseBoolean(option(options, "disconnects", "false"));
+        double loss = Double.parseDouble(option(options, "loss", "0.001"));
+        double bursts = Double.parseDouble(option(options, "bursts", "0.01"));
+        double jitter = Double.parseDouble(option(options, "jitter", "2"));
+        long seed = Long.parseLong(option(options, "seed", "1"));
+
+        File directory = Files.createTempDirectory("loadtest").toFile();
+        RecordingWriter writer = new RecordingWriter(directory, FLUSH_INTERVAL, RING_CAPACITY);
+        if (compression > 0) {
+            writer.setCompression(compression);
+        }
+        final CountDownLatch finished = new CountDownLatch(1);
+        final List<File> files = new ArrayList<>();
+        writer.setListener(new RecordingWriter.Listener() {
+            @Override
+            public void onFinished(List<File> written) {
+                files.addAll(written);
+                finished.countDown();
+            }
+        });
+
+        List<BoardSimulator> simulators = new ArrayList<>();
+        for (int i = 0; i < boards; i++) {
+            String macAddress = String.format("D5:8C:6A:12:%02X:%02X", i >> 8, i & 0xff);
+            SensorChannel accel = writer.openChannel(new SessionHeader(macAddress, "ACCEL", odr, ACCEL_RANGE,
+                    SensorScale.accel(ACCEL_RANGE)));
+            SensorChannel gyro = writer.openChannel(new SessionHeader(macAddress, "GYRO", odr, GYRO_RANGE,
+                    SensorScale.gyro(GYRO_RANGE)));
+            BoardSimulator simulator = new BoardSimulator(accel, gyro, seed + i);
+            simulator.setPacked(packed);
+            simulator.setLossProbability(loss);
+            simulator.setBurstProbability(bursts);
+            simulator.setJitter(jitter);
+            if (disconnects) {
+                simulator.setDisconnects(seconds * 1000L / 2, 3000);
+            }
+            simulators.add(simulator);
+        }
+
+        System.out.printf("%d boards, accel and gyro at %.0f Hz%s, for %d s%n", boards, odr,
+                packed ? " packed" : "", seconds);
+        ExecutorService executor = Executors.newFixedThreadPool(boards);
+        writer.start();
+        for (BoardSimulator simulator : simulators) {
+            simulator.start(executor);
+        }
+
+        long start = System.currentTimeMillis();
+        long end = start + seconds * 1000L;
+        while (System.currentTimeMillis() < end) {
+            Thread.sleep(Math.min(REPORT_INTERVAL, Math.max(1, end - System.currentTimeMillis())));
+            long delivered = 0;
+            for (BoardSimulator simulator : simulators) {
+                delivered += simulator.getDeliveredCount();
+            }
+            System.out.printf("%5.1f s: %d samples delivered, %d dropped by the rings%n",
+                    (System.currentTimeMillis() - start) / 1000f, delivered, overflowCount(writer));
+        }
+
+        for (BoardSimulator simulator : simulators) {
+            simulator.stop();
+        }
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+        long stopped = System.currentTimeMillis();
+        writer.stop();
+        finished.await();
+        long drainTime = System.currentTimeMillis() - stopped;
+
+        long generated = 0;
+        long lost = 0;
+        long delivered = 0;
+        int disconnectCount = 0;
+        for (BoardSimulator simulator : simulators) {
+            generated += simulator.getGeneratedCount();
+            lost += simulator.getLostCount();
+            delivered += simulator.getDeliveredCount();
+            disconnectCount += simulator.getDisconnectCount();
+        }
+        long written = 0;
+        for (SensorChannel channel : writer.getRegistry().getChannels()) {
+            for (SampleSink.Segment segment : channel.getSink().getSegments()) {
+                written += segment.samples;
+            }
+        }
+        long overflow = overflowCount(writer);
+        long bytes = 0;
+        for (File file : files) {
+            bytes += file.length();
+        }
+
+        System.out.printf("generated %d, lost in transit %d, %d disconnects%n", generated, lost, disconnectCount);
+        System.out.printf("delivered %d (%.0f samples/s), written %d, dropped by the rings %d%n", delivered,
+                delivered * 1000f / (stopped - start), written, overflow);
+        System.out.printf("%d files, %.1f MB, writer drained %d ms after the boards stopped%n", files.size(),
+                bytes / 1048576f, drainTime);
+
+        delete(directory, files);
+        System.exit(written == delivered ? 0 : 1);
+    }
+
+    private static String option(Map<String, String> options, String key, String defaultValue) {
+        String value = options.get(key);
+        return value == null ? defaultValue : value;
+    }
+
+    private static long overflowCount(RecordingWriter writer) {
+        long count = 0;
+        for (SensorChannel channel : writer.getRegistry().getChannels()) {
+            count += channel.getRing().getOverflowCount();
+        }
+        return count;
+    }
+
+    private static void delete(File directory, List<File> files) {
+        for (File file : files) {
+            file.delete();
+        }
+        File[] rest = directory.listFiles();
+        if (rest != null) {
+            for (File file : rest) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.android.bluetoothlegatt.benchmarks;
+
+import com.example.android.bluetoothlegatt.core.BinarySampleSink;
+import com.example.android.bluetoothlegatt.core.SampleBuffer;
+import com.example.android.bluetoothlegatt.core.SessionHeader;
+import com.example.android.bluetoothlegatt.core.SessionMerger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Merging a session of three boards, one minute of 100 Hz accelerometer data each,
+ * into the time ordered text file.  Scores are samples per second.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class MergeBenchmark {
+    private static final int BOARDS = 3;
+    private static final int SAMPLES = 6000;
+
+    private File directory;
+    private final List<File> sessions = new ArrayList<>();
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("merge").toFile();
+        for (int board = 0; board < BOARDS; board++) {
+            SessionHeader header = new SessionHeader("D5:8C:6A:12:34:5" + board, "ACCEL", 100, 4, Samples.ACCEL_SCALE);
+            BinarySampleSink sink = new BinarySampleSink(directory, header);
+            SampleBuffer samples = Samples.accelerometer(100, SAMPLES, board);
+            SampleBuffer batch = new SampleBuffer();
+            for (int i = 0; i < samples.size(); i++) {
+                batch.add(samples.getTimestamp(i), samples.getX(i), samples.getY(i), samples.getZ(i));
+                if (batch.size() == 5) {
+                    sink.write(batch);
+                    batch.clear();
+                }
+            }
+            sink.close();
+            sessions.add(sink.getFile());
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        for (File session : sessions) {
+            session.delete();
+        }
+        directory.delete();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BOARDS * SAMPLES)
+    public long merge() throws IOException {
+        SessionMerger merger = new SessionMerger();
+        File merged = merger.merge(sessions);
+        long length = merged.length();
+        merged.delete();
+        return length;
+    }
+}
@@ -0,0 +1,38 @@
+package com.example.android.bluetoothlegatt.benchmarks;
+
+import com.example.android.bluetoothlegatt.core.SampleBuffer;
+
+import java.util.Random;
+
+/**
+ * Synthetic accelerometer data shaped like a worn board's: a slow 1.5 Hz swing plus
+ * noise around 1 g, quantised to the int16 readings of the +-4 g range, with a little
+ * jitter on the sample times.
+ */
+final class Samples {
+    // LSB per g in the +-4 g range
+    static final float ACCEL_SCALE = 8192f;
+    static final long START = 1500000000000000000L;
+
+    private Samples() {
+    }
+
+    static SampleBuffer accelerometer(float odr, int count, long seed) {
+        Random random = new Random(seed);
+        SampleBuffer samples = new SampleBuffer();
+        long period = (long) (1e9 / odr);
+        double phase = 0;
+        for (int i = 0; i < count; i++) {
+            phase += 2 * Math.PI * 1.5 / odr;
+            samples.add(START + i * period + random.nextInt((int) (period / 50) + 1),
+                    quantise(0.3 * Math.sin(phase) + random.nextGaussian() * 0.01),
+                    quantise(0.1 * Math.cos(phase) + random.nextGaussian() * 0.01),
+                    quantise(1 + random.nextGaussian() * 0.01));
+        }
+        return samples;
+    }
+
+    private static float quantise(double g) {
+        return Math.round(g * ACCEL_SCALE) / ACCEL_SCALE;
+    }
+}
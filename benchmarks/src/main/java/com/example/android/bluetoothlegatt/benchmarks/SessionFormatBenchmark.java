@@ -0,0 +1,68 @@
+package com.example.android.bluetoothlegatt.benchmarks;
+
+import com.example.android.bluetoothlegatt.core.SampleBuffer;
+import com.example.android.bluetoothlegatt.core.SessionFormat;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding and decoding one block of the binary session format, with the int16
+ * columns a quantised accelerometer gets (scale 8192) and with floats (scale 0).
+ * Scores are samples per second.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class SessionFormatBenchmark {
+    private static final int BATCH = 4096;
+
+    @Param({"8192", "0"})
+    public float scale;
+
+    private SampleBuffer samples;
+    private final SampleBuffer decoded = new SampleBuffer();
+    private final ByteBuffer block = ByteBuffer.allocate(SessionFormat.maxBlockSize(BATCH));
+    private final ByteBuffer encoded = ByteBuffer.allocate(SessionFormat.maxBlockSize(BATCH));
+
+    @Setup
+    public void setUp() {
+        samples = Samples.accelerometer(100, BATCH, 1);
+        SessionFormat.encodeBlock(samples, scale, encoded);
+        encoded.flip();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public ByteBuffer encode() {
+        block.clear();
+        SessionFormat.encodeBlock(samples, scale, block);
+        return block;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public SampleBuffer decode() throws IOException {
+        decoded.clear();
+        encoded.rewind();
+        SessionFormat.decodeBlock(encoded, scale, decoded);
+        return decoded;
+    }
+}
@@ -0,0 +1,112 @@
+package com.example.android.bluetoothlegatt.core;
+
+import java.util.Collection;
+import java.util.UUID;
+
+/**
+ * Matches the service UUIDs in BLE advertisement scan records against a fixed set of
+ * services.  UUIDs are compared as the two longs of a {@link UUID}, with 16 and 32-bit
+ * UUIDs expanded onto the Bluetooth base UUID in place, so checking a scan record
+ * allocates nothing.  Records with length fields running past their end are read up to
+ * the last complete structure instead of throwing.
+ */
+public class AdvertisementParser {
+    private static final int TYPE_UUID16_PARTIAL = 0x02;
+    private static final int TYPE_UUID16_COMPLETE = 0x03;
+    private static final int TYPE_UUID32_PARTIAL = 0x04;
+    private static final int TYPE_UUID32_COMPLETE = 0x05;
+    private static final int TYPE_UUID128_PARTIAL = 0x06;
+    private static final int TYPE_UUID128_COMPLETE = 0x07;
+    // 00000000-0000-1000-8000-00805f9b34fb, short UUIDs fill in the top 32 bits
+    private static final long BASE_MSB = 0x0000000000001000L;
+    private static final long BASE_LSB = 0x800000805f9b34fbL;
+
+    private final long[] msbs;
+    private final long[] lsbs;
+
+    /**
+     * @param services Services to look for, every record matches if empty
+     */
+    public AdvertisementParser(Collection<UUID> services) {
+        msbs = new long[services.size()];
+        lsbs = new long[services.size()];
+        int i = 0;
+        for (UUID service : services) {
+            msbs[i] = service.getMostSignificantBits();
+            lsbs[i] = service.getLeastSignificantBits();
+            i++;
+        }
+    }
+
+    /**
+     * Returns true if {@code scanRecord} advertises one of the services, or if there
+     * are no services to look for.
+     */
+    public boolean matches(byte[] scanRecord) {
+        if (msbs.length == 0) {
+            return true;
+        }
+        if (scanRecord == null) {
+            return false;
+        }
+
+        int position = 0;
+        while (position < scanRecord.length) {
+            int length = scanRecord[position] & 0xff;
+            int end = position + 1 + length;
+            if (length == 0 || end > scanRecord.length) {
+                break;
+            }
+
+            int type = scanRecord[position + 1] & 0xff;
+            int data = position + 2;
+            switch (type) {
+                case TYPE_UUID16_PARTIAL:
+                case TYPE_UUID16_COMPLETE:
+                    for (; data + 2 <= end; data += 2) {
+                        if (contains(BASE_MSB | (readLittleEndian(scanRecord, data, 2) << 32), BASE_LSB)) {
+                            return true;
+                        }
+                    }
+                    break;
+
+                case TYPE_UUID32_PARTIAL:
+                case TYPE_UUID32_COMPLETE:
+                    for (; data + 4 <= end; data += 4) {
+                        if (contains(BASE_MSB | (readLittleEndian(scanRecord, data, 4) << 32), BASE_LSB)) {
+                            return true;
+                        }
+                    }
+                    break;
+
+                case TYPE_UUID128_PARTIAL:
+                case TYPE_UUID128_COMPLETE:
+                    for (; data + 16 <= end; data += 16) {
+                        if (contains(readLittleEndian(scanRecord, data + 8, 8), readLittleEndian(scanRecord, data, 8))) {
+                            return true;
+                        }
+                    }
+                    break;
+            }
+            position = end;
+        }
+        return false;
+    }
+
+    private boolean contains(long msb, long lsb) {
+        for (int i = 0; i < msbs.length; i++) {
+            if (msbs[i] == msb && lsbs[i] == lsb) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static long readLittleEndian(byte[] bytes, int offset, int count) {
+        long value = 0;
+        for (int i = count - 1; i >= 0; i--) {
+            value = (value << 8) | (bytes[offset + i] & 0xff);
+        }
+        return value;
+    }
+}
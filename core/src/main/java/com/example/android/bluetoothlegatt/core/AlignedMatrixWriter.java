@@ -0,0 +1,63 @@
+package com.example.android.bluetoothlegatt.core;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Writes the rows of a {@link TimelineAligner} as one text matrix, a timestamp
+ * followed by x, y, z of every channel on each line, under a header naming the
+ * columns.  Missing values are written as NaN.
+ */
+public class AlignedMatrixWriter implements TimelineAligner.Listener, Closeable {
+    private final File file;
+    private final TimestampFormatter formatter = new TimestampFormatter();
+    private final StringBuilder line = new StringBuilder(256);
+    private final AsciiFileWriter writer;
+
+    /**
+     * @param channels Name of each channel, in the aligner's channel order
+     */
+    public AlignedMatrixWriter(File file, List<String> channels) throws IOException {
+        this(file, channels, SessionCompression.NONE);
+    }
+
+    /**
+     * @param compressionLevel Deflate level from 1 to 9, or {@link SessionCompression#NONE}
+     */
+    public AlignedMatrixWriter(File file, List<String> channels, int compressionLevel) throws IOException {
+        this.file = file;
+        writer = new AsciiFileWriter(file, false, compressionLevel);
+        line.append("timestamp");
+        for (String channel : channels) {
+            line.append(", ").append(channel).append("_x")
+                    .append(", ").append(channel).append("_y")
+                    .append(", ").append(channel).append("_z");
+        }
+        writer.append(line).newLine();
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    @Override
+    public void onRow(long timestamp, float[] values) throws IOException {
+        line.setLength(0);
+        formatter.appendTo(line, timestamp);
+        for (float value : values) {
+            line.append(", ").append(value);
+        }
+        writer.append(line).newLine();
+    }
+
+    public void flush() throws IOException {
+        writer.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+}
@@ -0,0 +1,92 @@
+package com.example.android.bluetoothlegatt.core;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Writes ASCII text through a {@link FileChannel}, staging it in a large direct buffer
+ * so every write hands the kernel one big run without another copy through the Java
+ * heap.  The exported files only hold timestamps, numbers and MAC addresses, so
+ * characters outside ASCII are written as '?' instead of being encoded.  With a
+ * compression level the text is gzipped instead, see {@link SessionCompression}.
+ */
+public class AsciiFileWriter implements Closeable {
+    public static final int BUFFER_SIZE = 1 << 20;
+
+    private final OutputStream output;
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+
+    public AsciiFileWriter(File file, boolean append) throws IOException {
+        this(file, append, SessionCompression.NONE);
+    }
+
+    /**
+     * @param compressionLevel Deflate level from 1 to 9, or {@link SessionCompression#NONE}
+     */
+    public AsciiFileWriter(File file, boolean append, int compressionLevel) throws IOException {
+        if (compressionLevel == SessionCompression.NONE) {
+            FileOutputStream stream = new FileOutputStream(file, append);
+            output = stream;
+            channel = stream.getChannel();
+            buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        } else {
+            // The deflater only takes arrays, so the text is staged on the heap
+            output = SessionCompression.openOutput(file, append, compressionLevel);
+            channel = null;
+            buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        }
+    }
+
+    public AsciiFileWriter append(CharSequence text) throws IOException {
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            if (!buffer.hasRemaining()) {
+                drain();
+            }
+            char c = text.charAt(i);
+            buffer.put(c < 0x80 ? (byte) c : (byte) '?');
+        }
+        return this;
+    }
+
+    public AsciiFileWriter newLine() throws IOException {
+        if (!buffer.hasRemaining()) {
+            drain();
+        }
+        buffer.put((byte) '\n');
+        return this;
+    }
+
+    public void flush() throws IOException {
+        drain();
+        output.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            drain();
+        } finally {
+            output.close();
+        }
+    }
+
+    private void drain() throws IOException {
+        if (channel == null) {
+            output.write(buffer.array(), 0, buffer.position());
+            buffer.clear();
+            return;
+        }
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
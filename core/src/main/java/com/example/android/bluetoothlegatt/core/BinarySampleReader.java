@@ -0,0 +1,93 @@
+package com.example.android.bluetoothlegatt.core;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Streams blocks back out of a {@link SessionFormat} file, compressed or not.  A block
+ * cut short at the end of the file, e.g. because the app died mid-write, is treated as
+ * the end of the session.
+ */
+public class BinarySampleReader implements Closeable {
+    private final DataInputStream input;
+    private final FileChannel channel;
+    private final long length;
+    private final SessionHeader header;
+    private byte[] payload = new byte[0];
+
+    public BinarySampleReader(File file) throws IOException {
+        FileInputStream stream = new FileInputStream(file);
+        channel = stream.getChannel();
+        length = file.length();
+        try {
+            input = new DataInputStream(SessionCompression.openInput(stream));
+            header = readHeader(input);
+        } catch (IOException e) {
+            stream.close();
+            throw e;
+        }
+    }
+
+    public SessionHeader getHeader() {
+        return header;
+    }
+
+    /**
+     * Fraction of the file read so far, running up to a buffer ahead of the blocks
+     * returned.
+     */
+    public float getProgress() throws IOException {
+        return length == 0 ? 1f : Math.min(1f, (float) channel.position() / length);
+    }
+
+    /**
+     * Appends the next block of samples to {@code target}.
+     *
+     * @return False once there are no complete blocks left
+     */
+    public boolean readBlock(SampleBuffer target) throws IOException {
+        int length;
+        try {
+            length = input.readInt();
+            if (length <= 0) {
+                return false;
+            }
+            if (payload.length < length) {
+                payload = new byte[length];
+            }
+            input.readFully(payload, 0, length);
+        } catch (EOFException e) {
+            return false;
+        }
+
+        SessionFormat.decodeBlock(ByteBuffer.wrap(payload, 0, length), header.getScale(), target);
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        input.close();
+    }
+
+    public static SessionHeader readHeader(DataInputStream input) throws IOException {
+        if (input.readInt() != SessionFormat.MAGIC) {
+            throw new IOException("Not a session file");
+        }
+        short version = input.readShort();
+        if (version != SessionFormat.VERSION) {
+            throw new IOException("Unsupported session file version " + version);
+        }
+        String macAddress = input.readUTF();
+        String sensor = input.readUTF();
+        float odr = input.readFloat();
+        float range = input.readFloat();
+        float scale = input.readFloat();
+        return new SessionHeader(macAddress, sensor, odr, range, scale);
+    }
+}
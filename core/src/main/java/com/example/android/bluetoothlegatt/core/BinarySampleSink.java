@@ -0,0 +1,169 @@
+package com.example.android.bluetoothlegatt.core;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Writes samples in the {@link SessionFormat} binary layout, one block per batch.
+ * Like {@link TextSampleSink}, the file is created when the first batch arrives.
+ * With a compression level the whole file is gzipped, and every {@link #flush()}
+ * ends a deflate block so the file stays readable up to there.  With rotation the
+ * channel is split over segment files, each a complete session file of its own.
+ */
+public class BinarySampleSink implements SampleSink {
+    public interface Listener {
+        /**
+         * Called before each segment file is created, so its name can be recorded
+         * somewhere safe before any of its samples are written.
+         *
+         * @param firstSample Samples the sink wrote before this file
+         */
+        void onSegmentOpening(File file, long firstSample) throws IOException;
+    }
+
+    private final File directory;
+    private final SessionHeader header;
+    private final int compressionLevel;
+    private final List<Segment> segments = new ArrayList<>();
+    private Listener listener;
+    private long sampleCount;
+    private ByteBuffer block = ByteBuffer.allocate(SessionFormat.maxBlockSize(4096));
+    private DataOutputStream output;
+    private Segment segment;
+    private long segmentBytes;
+    private long maxSegmentBytes = Long.MAX_VALUE;
+    private long maxSegmentDuration = Long.MAX_VALUE;
+
+    public BinarySampleSink(File directory, SessionHeader header) {
+        this(directory, header, SessionCompression.NONE);
+    }
+
+    /**
+     * @param compressionLevel Deflate level from 1 to 9, or {@link SessionCompression#NONE}
+     */
+    public BinarySampleSink(File directory, SessionHeader header, int compressionLevel) {
+        this.directory = directory;
+        this.header = header;
+        this.compressionLevel = compressionLevel;
+    }
+
+    /**
+     * Starts a new segment file once the current one holds {@code maxBytes} bytes, counted
+     * before compression, or its samples span {@code maxDuration} nanoseconds.  Segments
+     * always end between two samples.  Either limit is off if 0.
+     */
+    public void setRotation(long maxBytes, long maxDuration) {
+        maxSegmentBytes = maxBytes > 0 ? maxBytes : Long.MAX_VALUE;
+        maxSegmentDuration = maxDuration > 0 ? maxDuration : Long.MAX_VALUE;
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    @Override
+    public File getFile() {
+        return segment == null ? null : segment.file;
+    }
+
+    @Override
+    public List<Segment> getSegments() {
+        return Collections.unmodifiableList(segments);
+    }
+
+    @Override
+    public void write(SampleBuffer batch) throws IOException {
+        int from = 0;
+        while (from < batch.size()) {
+            if (output != null && segmentBytes >= maxSegmentBytes) {
+                closeSegment();
+            }
+            if (output == null) {
+                openSegment(batch.getTimestamp(from));
+            }
+
+            // Only the samples that still fit in the segment's time span go in this block
+            int to = batch.size();
+            if (batch.getTimestamp(to - 1) - segment.first >= maxSegmentDuration) {
+                to = from;
+                while (to < batch.size() && batch.getTimestamp(to) - segment.first < maxSegmentDuration) {
+                    to++;
+                }
+            }
+            if (to == from) {
+                closeSegment();
+                continue;
+            }
+            writeBlock(batch, from, to);
+            from = to;
+        }
+    }
+
+    private void openSegment(long first) throws IOException {
+        String extension = segments.isEmpty() ? SessionFormat.EXTENSION : "-" + segments.size() + SessionFormat.EXTENSION;
+        File file = SessionFormat.newFile(directory, header.getChannelName(), first, extension);
+        if (listener != null) {
+            listener.onSegmentOpening(file, sampleCount);
+        }
+        output = new DataOutputStream(SessionCompression.openOutput(file, false, compressionLevel));
+        writeHeader(output, header);
+        segmentBytes = output.size();
+        segment = new Segment(file, first);
+        segments.add(segment);
+    }
+
+    private void closeSegment() throws IOException {
+        DataOutputStream closing = output;
+        output = null;
+        closing.close();
+    }
+
+    private void writeBlock(SampleBuffer batch, int from, int to) throws IOException {
+        int size = SessionFormat.maxBlockSize(to - from);
+        if (block.capacity() < size) {
+            block = ByteBuffer.allocate(size);
+        }
+        block.clear();
+        SessionFormat.encodeBlock(batch, from, to, header.getScale(), block);
+        output.writeInt(block.position());
+        output.write(block.array(), 0, block.position());
+
+        segmentBytes += 4 + block.position();
+        segment.last = batch.getTimestamp(to - 1);
+        segment.samples += to - from;
+        sampleCount += to - from;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (output != null) {
+            output.flush();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (output != null) {
+            closeSegment();
+        }
+    }
+
+    public static void writeHeader(DataOutputStream output, SessionHeader header) throws IOException {
+        output.writeInt(SessionFormat.MAGIC);
+        output.writeShort(SessionFormat.VERSION);
+        output.writeUTF(header.getMacAddress());
+        output.writeUTF(header.getSensor());
+        output.writeFloat(header.getOdr());
+        output.writeFloat(header.getRange());
+        output.writeFloat(header.getScale());
+    }
+}
@@ -0,0 +1,284 @@
+package com.example.android.bluetoothlegatt.core;
+
+import java.util.Random;
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Stands in for one streaming MetaWear board, for load testing the pipeline without
+ * hardware.  Accelerometer and gyro samples are produced at the channels' ODRs and
+ * handed to {@link SensorChannel#add} the way BoardRecorder's subscribers do: once per
+ * BLE connection event, every notification stamped with the millisecond it arrived,
+ * and in packed mode three samples per notification with {@link PackedTimestamps}
+ * spreading them back out.  On top of that it can add delivery jitter, skipped
+ * connection events whose samples then arrive in one burst with the next, lost
+ * notifications, and disconnects that leave a gap until the board reconnects.
+ *
+ * <p>Settings must be made before {@link #start()}.  The counters are written by the
+ * simulator thread only and may lag slightly when read from other threads.</p>
+ */
+public class BoardSimulator implements Runnable {
+    private static final long NANOS_PER_MILLI = 1000000L;
+
+    private final SensorChannel accelChannel;
+    private final SensorChannel gyroChannel;
+    private final Random random;
+    private long connectionInterval = 7500000L;
+    private double jitterMillis = 2;
+    private double burstProbability = 0.01;
+    private double lossProbability = 0.001;
+    private long meanConnectedTime;
+    private long reconnectTime = 3000 * NANOS_PER_MILLI;
+    private boolean packed;
+    private Thread thread;
+    private volatile boolean running;
+
+    private volatile long generatedCount;
+    private volatile long deliveredCount;
+    private volatile long lostCount;
+    private volatile int disconnectCount;
+
+    /**
+     * @param accelChannel Channel for the accelerometer, null to leave it off
+     * @param gyroChannel  Channel for the gyro, null to leave it off
+     * @param seed         Seed for the sample values and the link behaviour, so runs can
+     *                     be repeated
+     */
+    public BoardSimulator(SensorChannel accelChannel, SensorChannel gyroChannel, long seed) {
+        this.accelChannel = accelChannel;
+        this.gyroChannel = gyroChannel;
+        this.random = new Random(seed);
+    }
+
+    /**
+     * Time between BLE connection events in milliseconds, 7.5 by default.
+     */
+    public void setConnectionInterval(double millis) {
+        connectionInterval = (long) (millis * NANOS_PER_MILLI);
+    }
+
+    /**
+     * Standard deviation, in milliseconds, of the delay between a connection event and
+     * its notifications reaching the callbacks.
+     */
+    public void setJitter(double millis) {
+        jitterMillis = millis;
+    }
+
+    /**
+     * Chance of a connection event being missed, its notifications arriving with the
+     * next one instead.
+     */
+    public void setBurstProbability(double probability) {
+        burstProbability = probability;
+    }
+
+    /**
+     * Chance of a notification never arriving.
+     */
+    public void setLossProbability(double probability) {
+        lossProbability = probability;
+    }
+
+    /**
+     * Disconnects after a random connected time averaging {@code meanConnectedMillis}
+     * and reconnects {@code reconnectMillis} later.  Samples in between are lost, as
+     * when streaming from a real board.  Off if {@code meanConnectedMillis} is 0.
+     */
+    public void setDisconnects(long meanConnectedMillis, long reconnectMillis) {
+        meanConnectedTime = meanConnectedMillis * NANOS_PER_MILLI;
+        reconnectTime = reconnectMillis * NANOS_PER_MILLI;
+    }
+
+    /**
+     * Sends {@link PackedTimestamps#SAMPLES_PER_PACKET} samples per notification, like
+     * BoardRecorder.Mode.PACKED_STREAMING.
+     */
+    public void setPacked(boolean packed) {
+        this.packed = packed;
+    }
+
+    public void start() {
+        running = true;
+        thread = new Thread(this, "BoardSimulator");
+        thread.start();
+    }
+
+    /**
+     * Runs the simulator on {@code executor} instead of a thread of its own.  The
+     * simulator occupies the executor's thread until it is stopped.
+     */
+    public void start(Executor executor) {
+        running = true;
+        executor.execute(this);
+    }
+
+    public void stop() {
+        running = false;
+    }
+
+    /** Samples the sensors produced, whether they arrived or not. */
+    public long getGeneratedCount() {
+        return generatedCount;
+    }
+
+    /** Samples passed to the channels. */
+    public long getDeliveredCount() {
+        return deliveredCount;
+    }
+
+    /** Samples lost to dropped notifications and disconnects. */
+    public long getLostCount() {
+        return lostCount;
+    }
+
+    public int getDisconnectCount() {
+        return disconnectCount;
+    }
+
+    @Override
+    public void run() {
+        long epochOffset = TimestampFormatter.millisToNanos(System.currentTimeMillis()) - System.nanoTime();
+        long now = System.nanoTime();
+        Sensor accel = accelChannel == null ? null : new Sensor(accelChannel, 0.3f, 0.1f, 1f, 0.01f, now);
+        Sensor gyro = gyroChannel == null ? null : new Sensor(gyroChannel, 50f, 20f, 0f, 0.5f, now);
+        long nextEvent = now + connectionInterval;
+        long disconnectAt = nextDisconnect(now);
+        long reconnectAt = 0;
+        long lastArrival = 0;
+
+        while (running) {
+            long wait = nextEvent - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+                continue;
+            }
+            now = System.nanoTime();
+            nextEvent += connectionInterval;
+
+            if (reconnectAt != 0) {
+                if (now < reconnectAt) {
+                    continue;
+                }
+                // Streaming starts over once the routes are installed again
+                reconnectAt = 0;
+                disconnectAt = nextDisconnect(now);
+                if (accel != null) {
+                    lostCount += accel.skip(now);
+                }
+                if (gyro != null) {
+                    lostCount += gyro.skip(now);
+                }
+            } else if (now >= disconnectAt) {
+                if (accelChannel != null) {
+                    accelChannel.beginGap();
+                }
+                if (gyroChannel != null) {
+                    gyroChannel.beginGap();
+                }
+                disconnectCount++;
+                reconnectAt = now + reconnectTime;
+                continue;
+            }
+
+            if (random.nextDouble() < burstProbability) {
+                continue;
+            }
+            long arrival = now + (long) (Math.abs(random.nextGaussian()) * jitterMillis * NANOS_PER_MILLI);
+            // Callbacks run in order, so arrival times never go backwards
+            lastArrival = Math.max(lastArrival, arrival);
+            long timestamp = TimestampFormatter.millisToNanos((epochOffset + lastArrival) / NANOS_PER_MILLI);
+            if (accel != null) {
+                accel.deliver(now, timestamp);
+            }
+            if (gyro != null) {
+                gyro.deliver(now, timestamp);
+            }
+        }
+    }
+
+    private long nextDisconnect(long now) {
+        if (meanConnectedTime == 0) {
+            return Long.MAX_VALUE;
+        }
+        return now + (long) (-Math.log(1 - random.nextDouble()) * meanConnectedTime);
+    }
+
+    /**
+     * Sample clock and signal of one sensor.  Values are a slow swing on x and y around
+     * an offset on z plus noise, quantised to the channel's raw readings.
+     */
+    private class Sensor {
+        final SensorChannel channel;
+        final PackedTimestamps packedTimestamps;
+        final float amplitudeX;
+        final float amplitudeY;
+        final float offsetZ;
+        final float noise;
+        final float scale;
+        final long period;
+        final double phaseStep;
+        final int samplesPerNotification;
+        // Time the next sample is taken, in System.nanoTime() terms
+        long nextSample;
+        double phase;
+
+        Sensor(SensorChannel channel, float amplitudeX, float amplitudeY, float offsetZ, float noise, long start) {
+            SessionHeader header = channel.getHeader();
+            this.channel = channel;
+            this.packedTimestamps = new PackedTimestamps(header.getOdr());
+            this.amplitudeX = amplitudeX;
+            this.amplitudeY = amplitudeY;
+            this.offsetZ = offsetZ;
+            this.noise = noise;
+            this.scale = header.getScale();
+            this.period = (long) (1e9 / header.getOdr());
+            this.phaseStep = 2 * Math.PI * 1.5 / header.getOdr();
+            this.samplesPerNotification = packed ? PackedTimestamps.SAMPLES_PER_PACKET : 1;
+            this.nextSample = start + random.nextInt((int) period);
+            this.phase = random.nextDouble() * 2 * Math.PI;
+        }
+
+        /**
+         * Hands every complete notification sampled by {@code now} to the channel.
+         */
+        void deliver(long now, long timestamp) {
+            while (nextSample + (samplesPerNotification - 1) * period <= now) {
+                boolean lost = random.nextDouble() < lossProbability;
+                for (int i = 0; i < samplesPerNotification; i++) {
+                    phase += phaseStep;
+                    float x = quantise(amplitudeX * Math.sin(phase));
+                    float y = quantise(amplitudeY * Math.cos(phase));
+                    float z = quantise(offsetZ);
+                    if (lost) {
+                        lostCount++;
+                    } else {
+                        channel.add(packed ? packedTimestamps.next(timestamp) : timestamp, x, y, z);
+                        deliveredCount++;
+                    }
+                    generatedCount++;
+                    nextSample += period;
+                }
+            }
+        }
+
+        /**
+         * Drops the samples taken before {@code now}, returning how many there were.
+         */
+        long skip(long now) {
+            long skipped = 0;
+            while (nextSample <= now) {
+                phase += phaseStep;
+                nextSample += period;
+                skipped++;
+            }
+            generatedCount += skipped;
+            return skipped;
+        }
+
+        private float quantise(double value) {
+            value += random.nextGaussian() * noise;
+            return scale > 0 ? Math.round(value * scale) / scale : (float) value;
+        }
+    }
+}
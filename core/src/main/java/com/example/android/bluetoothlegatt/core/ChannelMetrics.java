@@ -0,0 +1,75 @@
+package com.example.android.bluetoothlegatt.core;
+
+/**
+ * Running counters for one sensor channel.  {@link #record} is called for every
+ * sample on the MetaWear callback thread and only does plain field writes; other
+ * threads read the fields without synchronization, so values they see may lag
+ * slightly behind, which is fine for display and logging.
+ */
+public class ChannelMetrics {
+    private long sampleCount;
+    private long lastTimestamp;
+    private float lastX;
+    private float lastY;
+    private float lastZ;
+
+    // Only touched by the thread calling updateRate()
+    private long rateCount;
+    private long rateTime;
+    private float rate;
+
+    public void record(long timestamp, float x, float y, float z) {
+        sampleCount++;
+        lastTimestamp = timestamp;
+        lastX = x;
+        lastY = y;
+        lastZ = z;
+    }
+
+    public long getSampleCount() {
+        return sampleCount;
+    }
+
+    public long getLastTimestamp() {
+        return lastTimestamp;
+    }
+
+    public float getLastX() {
+        return lastX;
+    }
+
+    public float getLastY() {
+        return lastY;
+    }
+
+    public float getLastZ() {
+        return lastZ;
+    }
+
+    /**
+     * Recomputes the sample rate from the samples counted since the previous call.
+     * Meant to be polled periodically from a single thread; RecordingWriter does so
+     * once a second while recording.
+     *
+     * @param now Current time in milliseconds
+     * @return Samples per second over the last interval
+     */
+    public float updateRate(long now) {
+        long count = sampleCount;
+        if (rateTime != 0 && now > rateTime) {
+            rate = (count - rateCount) * 1000f / (now - rateTime);
+        }
+        rateCount = count;
+        rateTime = now;
+        return rate;
+    }
+
+    public float getRate() {
+        return rate;
+    }
+
+    @Override
+    public String toString() {
+        return "samples=" + sampleCount + ", rate=" + rate + " Hz, last=" + lastX + ", " + lastY + ", " + lastZ;
+    }
+}
@@ -0,0 +1,44 @@
+package com.example.android.bluetoothlegatt.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads the segment files of one channel one after the other, keeping only one of
+ * them open at a time.
+ */
+class ChannelReader {
+    final List<File> files = new ArrayList<>();
+    private BinarySampleReader reader;
+    private int index;
+
+    ChannelReader(File file, BinarySampleReader reader) {
+        files.add(file);
+        this.reader = reader;
+    }
+
+    SessionHeader getHeader() {
+        return reader.getHeader();
+    }
+
+    boolean readBlock(SampleBuffer target) throws IOException {
+        while (!reader.readBlock(target)) {
+            if (index + 1 == files.size()) {
+                return false;
+            }
+            reader.close();
+            reader = new BinarySampleReader(files.get(++index));
+        }
+        return true;
+    }
+
+    float getProgress() throws IOException {
+        return (index + reader.getProgress()) / files.size();
+    }
+
+    void close() throws IOException {
+        reader.close();
+    }
+}
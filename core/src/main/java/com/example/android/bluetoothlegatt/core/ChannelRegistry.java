@@ -0,0 +1,38 @@
+package com.example.android.bluetoothlegatt.core;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Channels of a recording session, looked up by board MAC address and sensor name.
+ * Lookups are meant for the UI and export code; the sample path holds on to its
+ * {@link SensorChannel} directly.
+ */
+public class ChannelRegistry {
+    private final Map<String, Map<String, SensorChannel>> boards = new HashMap<>();
+    private final List<SensorChannel> channels = new CopyOnWriteArrayList<>();
+
+    public synchronized void add(SensorChannel channel) {
+        Map<String, SensorChannel> sensors = boards.get(channel.getMacAddress());
+        if (sensors == null) {
+            sensors = new HashMap<>();
+            boards.put(channel.getMacAddress(), sensors);
+        }
+        sensors.put(channel.getSensor(), channel);
+        channels.add(channel);
+    }
+
+    public synchronized SensorChannel get(String macAddress, String sensor) {
+        Map<String, SensorChannel> sensors = boards.get(macAddress);
+        return sensors == null ? null : sensors.get(sensor);
+    }
+
+    /**
+     * All channels in the order they were added.  Safe to iterate from any thread.
+     */
+    public List<SensorChannel> getChannels() {
+        return channels;
+    }
+}
@@ -0,0 +1,41 @@
+package com.example.android.bluetoothlegatt.core;
+
+/**
+ * Rebuilds per-sample timestamps for a packed data producer.  The BMI160 packs
+ * {@link #SAMPLES_PER_PACKET} consecutive samples into one BLE notification and every
+ * one of them arrives stamped with the notification's time, so the samples are spread
+ * back out one ODR period apart, ending at that time.  Reconstructed timestamps never
+ * go backwards, even when several notifications arrive in the same connection event.
+ */
+public class PackedTimestamps {
+    public static final int SAMPLES_PER_PACKET = 3;
+
+    private final long periodNanos;
+    private long packetTimestamp = Long.MIN_VALUE;
+    private int index;
+    private long last = Long.MIN_VALUE;
+
+    /**
+     * @param odr Output data rate of the packed producer in Hz
+     */
+    public PackedTimestamps(float odr) {
+        periodNanos = (long) (1e9 / odr);
+    }
+
+    /**
+     * Returns the timestamp of the next sample, given the timestamp it arrived with.
+     */
+    public long next(long timestamp) {
+        if (timestamp != packetTimestamp || index == SAMPLES_PER_PACKET) {
+            packetTimestamp = timestamp;
+            index = 0;
+        }
+        long reconstructed = timestamp - (SAMPLES_PER_PACKET - 1 - index) * periodNanos;
+        index++;
+        if (last != Long.MIN_VALUE && reconstructed <= last) {
+            reconstructed = last + periodNanos;
+        }
+        last = reconstructed;
+        return reconstructed;
+    }
+}
@@ -0,0 +1,417 @@
+package com.example.android.bluetoothlegatt.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Background thread that moves samples from the recording channels to disk while a
+ * session is running.  Every drain pass takes batches from the channels'
+ * {@link SampleRing}s in turn and appends them to each channel's open file, so
+ * memory use stays bounded by the ring capacity rather than the session length.
+ * The batches can also be aligned onto a common timeline as they are written.
+ */
+public class RecordingWriter implements Runnable {
+    public interface Listener {
+        /** Called on the writer thread once all files have been closed. */
+        void onFinished(List<File> files);
+    }
+
+    private static final Logger LOG = Logger.getLogger(RecordingWriter.class.getName());
+    private static final long DRAIN_INTERVAL = 50;
+    private static final int BATCH_SIZE = 4096;
+    // How often the channels' sample rates are recomputed
+    private static final long RATE_INTERVAL = 1000;
+
+    private final File directory;
+    private final long flushInterval;
+    private final int ringCapacity;
+    private final ChannelRegistry registry = new ChannelRegistry();
+    private final SessionMetadata metadata = new SessionMetadata();
+    private final SampleBuffer batch = new SampleBuffer();
+    private final Object lock = new Object();
+    private Listener listener;
+    private SessionJournal journal;
+    private SessionAligner sessionAligner;
+    private int compressionLevel = SessionCompression.NONE;
+    private long maxSegmentBytes;
+    private long maxSegmentDuration;
+    // Segment files the manifest in the metadata file was last written for
+    private int manifestSegments;
+    // Set once a channel file could not be written, the journal is then kept for recovery
+    private volatile boolean writeFailed;
+    private TimelineAligner aligner;
+    private AlignedMatrixWriter alignedWriter;
+    private Thread thread;
+    private volatile boolean running;
+
+    /**
+     * @param directory     Folder the channel files are created in
+     * @param flushInterval How often, in milliseconds, buffered output is pushed to disk
+     * @param ringCapacity  Number of samples each channel can queue between drain passes
+     */
+    public RecordingWriter(File directory, long flushInterval, int ringCapacity) {
+        this.directory = directory;
+        this.flushInterval = flushInterval;
+        this.ringCapacity = ringCapacity;
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Also appends every drained batch to {@code journal}, which is discarded once the
+     * session files have been closed cleanly.  If writing a channel file failed at any
+     * point the journal is kept instead, as the only complete copy of the session.
+     */
+    public void setJournal(SessionJournal journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * Also writes the channels aligned onto one timeline to a matrix file while
+     * recording.  Must be set before {@link #start()}.
+     */
+    public void setAligner(SessionAligner sessionAligner) {
+        this.sessionAligner = sessionAligner;
+    }
+
+    /**
+     * Gzips the channel files at {@code level}, from 1 to 9.  Compression runs on the
+     * writer thread, so it never holds up the boards' callbacks.  Must be set before
+     * the channels are opened.
+     */
+    public void setCompression(int level) {
+        this.compressionLevel = level;
+    }
+
+    /**
+     * Splits each channel over segment files of at most {@code maxBytes} bytes or
+     * {@code maxDuration} nanoseconds of samples, 0 for no limit.  The metadata file
+     * lists every segment and is rewritten as new ones are started, so it is current
+     * even if the session never ends cleanly.  Must be set before the channels are
+     * opened.
+     */
+    public void setRotation(long maxBytes, long maxDuration) {
+        this.maxSegmentBytes = maxBytes;
+        this.maxSegmentDuration = maxDuration;
+    }
+
+    /**
+     * Creates and registers the channel for one board's sensor.
+     */
+    public SensorChannel openChannel(SessionHeader header) {
+        BinarySampleSink sink = new BinarySampleSink(directory, header, compressionLevel);
+        sink.setRotation(maxSegmentBytes, maxSegmentDuration);
+        final SensorChannel channel = new SensorChannel(header, new SampleRing(ringCapacity), sink, metadata);
+        sink.setListener(new BinarySampleSink.Listener() {
+            @Override
+            public void onSegmentOpening(File file, long firstSample) {
+                journalFile(channel, file, firstSample);
+            }
+        });
+        registry.add(channel);
+        return channel;
+    }
+
+    public ChannelRegistry getRegistry() {
+        return registry;
+    }
+
+    public SessionMetadata getMetadata() {
+        return metadata;
+    }
+
+    /**
+     * True if a channel file could not be written, in which case the session files are
+     * incomplete and the journal has been kept so the next launch can recover them.
+     */
+    public boolean hasWriteFailed() {
+        return writeFailed;
+    }
+
+    public void start() {
+        prepare();
+        thread = new Thread(this, "RecordingWriter");
+        thread.start();
+    }
+
+    /**
+     * Runs the writer on {@code executor} instead of a thread of its own.  The writer
+     * occupies the executor's thread until the session is stopped.
+     */
+    public void start(Executor executor) {
+        prepare();
+        executor.execute(this);
+    }
+
+    private void prepare() {
+        if (!directory.isDirectory()) {
+            directory.mkdirs();
+        }
+        metadata.setStartTime(TimestampFormatter.millisToNanos(System.currentTimeMillis()));
+        running = true;
+    }
+
+    /**
+     * Asks the writer to drain what is left and close its files.  Returns immediately,
+     * completion is reported through the {@link Listener}.
+     */
+    public void stop() {
+        running = false;
+        synchronized (lock) {
+            lock.notifyAll();
+        }
+    }
+
+    @Override
+    public void run() {
+        openAligner();
+        long lastFlush = System.currentTimeMillis();
+        long lastRate = 0;
+        while (running) {
+            synchronized (lock) {
+                try {
+                    lock.wait(Math.min(DRAIN_INTERVAL, flushInterval));
+                } catch (InterruptedException e) {
+                    running = false;
+                }
+            }
+
+            drain();
+            long now = System.currentTimeMillis();
+            if (now - lastFlush >= flushInterval) {
+                flush();
+                lastFlush = now;
+            }
+            if (now - lastRate >= RATE_INTERVAL) {
+                updateRates(now);
+                lastRate = now;
+            }
+        }
+
+        // Nothing is added any more, so this empties the rings for good
+        while (drain()) {
+            continue;
+        }
+        metadata.setStopTime(TimestampFormatter.millisToNanos(System.currentTimeMillis()));
+        List<File> files = close();
+        if (listener != null) {
+            listener.onFinished(files);
+        }
+    }
+
+    private void updateRates(long now) {
+        List<SensorChannel> channels = registry.getChannels();
+        for (int i = 0; i < channels.size(); i++) {
+            channels.get(i).getMetrics().updateRate(now);
+        }
+    }
+
+    /**
+     * Takes one batch from each channel per round, so a board that keeps its ring busy
+     * cannot hold up the others.  Stops when a round finds every ring empty, or after
+     * enough rounds to empty rings that were full.
+     *
+     * @return Whether samples may still be waiting
+     */
+    private boolean drain() {
+        List<SensorChannel> channels = registry.getChannels();
+        int maxRounds = ringCapacity / BATCH_SIZE + 1;
+        for (int round = 0; round < maxRounds; round++) {
+            boolean drained = false;
+            for (int i = 0; i < channels.size(); i++) {
+                SensorChannel channel = channels.get(i);
+                if (channel.getRing().drainTo(batch, BATCH_SIZE) == 0) {
+                    continue;
+                }
+                drained = true;
+                journal(channel);
+                try {
+                    channel.getSink().write(batch);
+                } catch (IOException e) {
+                    LOG.log(Level.SEVERE, "Failed to write " + channel.getHeader().getChannelName() + " to "
+                            + channel.getSink().getFile(), e);
+                    writeFailed = true;
+                }
+                align(i);
+                batch.clear();
+            }
+            if (!drained) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void openAligner() {
+        if (sessionAligner == null) {
+            return;
+        }
+        List<SessionHeader> headers = new ArrayList<>();
+        for (SensorChannel channel : registry.getChannels()) {
+            headers.add(channel.getHeader());
+        }
+        try {
+            alignedWriter = sessionAligner.newWriter(directory, metadata.getStartTime(), headers);
+            aligner = sessionAligner.newAligner(headers, alignedWriter);
+        } catch (IOException e) {
+            LOG.log(Level.SEVERE, "Failed to open the aligned matrix in " + directory + ", recording without it", e);
+        }
+    }
+
+    private void align(int channel) {
+        // Channels opened after the start are not part of the matrix
+        if (aligner == null || channel >= aligner.getChannelCount()) {
+            return;
+        }
+        try {
+            aligner.add(channel, batch);
+        } catch (IOException e) {
+            // Keep recording the channel files without the matrix
+            LOG.log(Level.SEVERE, "Failed to align " + registry.getChannels().get(channel).getHeader().getChannelName()
+                    + " into " + alignedWriter.getFile(), e);
+            closeAligner(false);
+        }
+    }
+
+    private File closeAligner(boolean finish) {
+        if (alignedWriter == null) {
+            return null;
+        }
+        File file = alignedWriter.getFile();
+        try {
+            if (finish) {
+                aligner.finish();
+            }
+            alignedWriter.close();
+        } catch (IOException e) {
+            LOG.log(Level.SEVERE, "Failed to close the aligned matrix " + file, e);
+            file = null;
+        }
+        aligner = null;
+        alignedWriter = null;
+        return file;
+    }
+
+    private void journal(SensorChannel channel) {
+        if (journal == null) {
+            return;
+        }
+        try {
+            if (channel.journalId < 0) {
+                channel.journalId = journal.addChannel(channel.getHeader());
+            }
+            journal.append(channel.journalId, batch);
+        } catch (IOException e) {
+            // Keep recording to the session files without crash protection
+            LOG.log(Level.SEVERE, "Failed to journal " + channel.getHeader().getChannelName()
+                    + ", recording without crash recovery", e);
+            journal.close();
+            journal = null;
+        }
+    }
+
+    private void journalFile(SensorChannel channel, File file, long firstSample) {
+        if (journal == null || channel.journalId < 0) {
+            return;
+        }
+        try {
+            journal.addFile(channel.journalId, file, firstSample, compressionLevel);
+        } catch (IOException e) {
+            LOG.log(Level.SEVERE, "Failed to journal " + file + " of " + channel.getHeader().getChannelName()
+                    + ", recording without crash recovery", e);
+            journal.close();
+            journal = null;
+        }
+    }
+
+    private void flush() {
+        if (journal != null) {
+            journal.force();
+        }
+        if (alignedWriter != null) {
+            try {
+                alignedWriter.flush();
+            } catch (IOException e) {
+                LOG.log(Level.SEVERE, "Failed to flush the aligned matrix " + alignedWriter.getFile(), e);
+            }
+        }
+        int segments = 0;
+        for (SensorChannel channel : registry.getChannels()) {
+            try {
+                channel.getSink().flush();
+            } catch (IOException e) {
+                LOG.log(Level.SEVERE, "Failed to flush " + channel.getHeader().getChannelName() + " to "
+                        + channel.getSink().getFile() + ", keeping the journal", e);
+                writeFailed = true;
+            }
+            segments += channel.getSink().getSegments().size();
+        }
+        // The channel files now hold everything journaled before the current segment
+        if (journal != null && !writeFailed) {
+            journal.retire();
+        }
+        if (segments != manifestSegments) {
+            try {
+                metadata.write(getMetadataFile(), registry.getChannels());
+                manifestSegments = segments;
+            } catch (IOException e) {
+                LOG.log(Level.SEVERE, "Failed to update the session metadata " + getMetadataFile(), e);
+            }
+        }
+    }
+
+    private File getMetadataFile() {
+        return SessionFormat.newFile(directory, "session", metadata.getStartTime(), ".txt");
+    }
+
+    private List<File> close() {
+        List<File> files = new ArrayList<>();
+        for (SensorChannel channel : registry.getChannels()) {
+            try {
+                channel.getSink().close();
+            } catch (IOException e) {
+                LOG.log(Level.SEVERE, "Failed to close " + channel.getHeader().getChannelName() + " file "
+                        + channel.getSink().getFile() + ", keeping the journal", e);
+                writeFailed = true;
+            }
+            for (SampleSink.Segment segment : channel.getSink().getSegments()) {
+                files.add(segment.file);
+            }
+        }
+
+        File aligned = closeAligner(true);
+        if (aligned != null) {
+            if (files.isEmpty()) {
+                aligned.delete();
+            } else {
+                files.add(aligned);
+            }
+        }
+
+        if (!files.isEmpty()) {
+            File file = getMetadataFile();
+            try {
+                metadata.write(file, registry.getChannels());
+                files.add(file);
+            } catch (IOException e) {
+                LOG.log(Level.SEVERE, "Failed to write the session metadata " + file, e);
+            }
+        }
+
+        if (journal != null) {
+            if (!writeFailed) {
+                journal.discard();
+            } else {
+                journal.close();
+            }
+        }
+        return files;
+    }
+}
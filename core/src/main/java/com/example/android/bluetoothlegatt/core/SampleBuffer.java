@@ -0,0 +1,101 @@
+package com.example.android.bluetoothlegatt.core;
+
+/**
+ * Growable columnar store for one sensor channel.  Samples are kept in primitive
+ * timestamp (epoch nanoseconds) and x/y/z columns split into fixed size chunks, so
+ * appending never copies existing samples and each sample costs 20 bytes of heap
+ * instead of a {@link SensorRecord} plus its timestamp string.
+ */
+public class SampleBuffer {
+    private static final int CHUNK_SHIFT = 12;
+    private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    private long[][] timestamps = new long[4][];
+    private float[][] xs = new float[4][];
+    private float[][] ys = new float[4][];
+    private float[][] zs = new float[4][];
+    private int size;
+
+    public void add(long timestamp, float x, float y, float z) {
+        int chunk = size >>> CHUNK_SHIFT;
+        int offset = size & CHUNK_MASK;
+        if (offset == 0) {
+            allocateChunk(chunk);
+        }
+        timestamps[chunk][offset] = timestamp;
+        xs[chunk][offset] = x;
+        ys[chunk][offset] = y;
+        zs[chunk][offset] = z;
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public long getTimestamp(int index) {
+        return timestamps[index >>> CHUNK_SHIFT][index & CHUNK_MASK];
+    }
+
+    public float getX(int index) {
+        return xs[index >>> CHUNK_SHIFT][index & CHUNK_MASK];
+    }
+
+    public float getY(int index) {
+        return ys[index >>> CHUNK_SHIFT][index & CHUNK_MASK];
+    }
+
+    public float getZ(int index) {
+        return zs[index >>> CHUNK_SHIFT][index & CHUNK_MASK];
+    }
+
+    /**
+     * Overwrites one axis (0 = x, 1 = y, 2 = z) of a sample already in the buffer.
+     */
+    public void set(int index, int axis, float value) {
+        float[][] column = axis == 0 ? xs : axis == 1 ? ys : zs;
+        column[index >>> CHUNK_SHIFT][index & CHUNK_MASK] = value;
+    }
+
+    public SensorRecord get(int index) {
+        return new SensorRecord(getTimestamp(index), getX(index), getY(index), getZ(index));
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    private void allocateChunk(int chunk) {
+        if (chunk == timestamps.length) {
+            // Only the chunk tables grow, the sample columns already written stay put
+            int length = timestamps.length * 2;
+            timestamps = copyOf(timestamps, length);
+            xs = copyOf(xs, length);
+            ys = copyOf(ys, length);
+            zs = copyOf(zs, length);
+        }
+        if (timestamps[chunk] == null) {
+            timestamps[chunk] = new long[CHUNK_SIZE];
+            xs[chunk] = new float[CHUNK_SIZE];
+            ys[chunk] = new float[CHUNK_SIZE];
+            zs[chunk] = new float[CHUNK_SIZE];
+        }
+    }
+
+    private static long[][] copyOf(long[][] table, int length) {
+        long[][] copy = new long[length][];
+        System.arraycopy(table, 0, copy, 0, table.length);
+        return copy;
+    }
+
+    private static float[][] copyOf(float[][] table, int length) {
+        float[][] copy = new float[length][];
+        System.arraycopy(table, 0, copy, 0, table.length);
+        return copy;
+    }
+}
@@ -0,0 +1,120 @@
+package com.example.android.bluetoothlegatt.core;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Bounded single-producer/single-consumer queue of samples backed by preallocated
+ * primitive columns.  The producer (the MetaWear callback for one channel) never
+ * blocks or allocates when using {@link #offer}: if the ring is full the sample is
+ * dropped and counted in {@link #getOverflowCount()} instead.  Only one thread may offer and only one
+ * thread may drain at any given time.
+ */
+public class SampleRing {
+    // How long put() waits before checking for free space again
+    private static final long PUT_PARK_NANOS = 100000;
+
+    private final int mask;
+    private final long[] timestamps;
+    private final float[] xs;
+    private final float[] ys;
+    private final float[] zs;
+
+    // Next slot the consumer reads, written by the consumer only
+    private final AtomicLong head = new AtomicLong();
+    // Next slot the producer writes, written by the producer only
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong overflowCount = new AtomicLong();
+
+    // Producer's last view of head, avoids a volatile read per offer
+    private long cachedHead;
+    // Consumer's last view of tail
+    private long cachedTail;
+
+    /**
+     * @param capacity Number of samples the ring holds, rounded up to a power of two
+     */
+    public SampleRing(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        mask = size - 1;
+        timestamps = new long[size];
+        xs = new float[size];
+        ys = new float[size];
+        zs = new float[size];
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+
+    /**
+     * Appends a sample, returning false if the ring was full and the sample dropped.
+     */
+    public boolean offer(long timestamp, float x, float y, float z) {
+        if (!tryOffer(timestamp, x, y, z)) {
+            overflowCount.lazySet(overflowCount.get() + 1);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Appends a sample, waiting for the consumer to free a slot if the ring is full.
+     * Only meant for producers that can afford to wait, such as log downloads.
+     */
+    public void put(long timestamp, float x, float y, float z) {
+        while (!tryOffer(timestamp, x, y, z)) {
+            LockSupport.parkNanos(PUT_PARK_NANOS);
+        }
+    }
+
+    private boolean tryOffer(long timestamp, float x, float y, float z) {
+        long currentTail = tail.get();
+        if (currentTail - cachedHead > mask) {
+            cachedHead = head.get();
+            if (currentTail - cachedHead > mask) {
+                return false;
+            }
+        }
+
+        int index = (int) currentTail & mask;
+        timestamps[index] = timestamp;
+        xs[index] = x;
+        ys[index] = y;
+        zs[index] = z;
+        // Publishes the slot contents before the new tail becomes visible
+        tail.lazySet(currentTail + 1);
+        return true;
+    }
+
+    /**
+     * Moves up to {@code max} queued samples into {@code target}.
+     *
+     * @return Number of samples moved
+     */
+    public int drainTo(SampleBuffer target, int max) {
+        long currentHead = head.get();
+        if (cachedTail - currentHead <= 0) {
+            cachedTail = tail.get();
+        }
+
+        int count = (int) Math.min(max, cachedTail - currentHead);
+        for (int i = 0; i < count; i++) {
+            int index = (int) (currentHead + i) & mask;
+            target.add(timestamps[index], xs[index], ys[index], zs[index]);
+        }
+        if (count > 0) {
+            // Hands the slots back to the producer only after they have been read
+            head.lazySet(currentHead + count);
+        }
+        return count;
+    }
+
+    public int size() {
+        return (int) (tail.get() - head.get());
+    }
+
+    public long getOverflowCount() {
+        return overflowCount.get();
+    }
+}
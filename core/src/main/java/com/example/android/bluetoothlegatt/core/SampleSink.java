@@ -0,0 +1,36 @@
+package com.example.android.bluetoothlegatt.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Destination for batches of samples drained from a recording channel.  Sinks are
+ * only ever used from the recording writer thread.
+ */
+public interface SampleSink {
+    /**
+     * One file written by a sink and the samples in it.
+     */
+    class Segment {
+        public final File file;
+        // Epoch nanos of the first and last sample in the file
+        public long first;
+        public long last;
+        public long samples;
+
+        public Segment(File file, long first) {
+            this.file = file;
+            this.first = first;
+            this.last = first;
+        }
+    }
+
+    /** File being written, null until the first sample arrives. */
+    File getFile();
+    /** Every file written so far, in order, the last one still being written. */
+    List<Segment> getSegments();
+    void write(SampleBuffer batch) throws IOException;
+    void flush() throws IOException;
+    void close() throws IOException;
+}
@@ -0,0 +1,87 @@
+package com.example.android.bluetoothlegatt.core;
+
+/**
+ * One sensor stream of one board, e.g. the accelerometer of C5:3F:...  Subscribers
+ * resolve their channel once when the route is built and call {@link #add} for every
+ * sample, which goes straight to the channel's ring and counters without any lookups.
+ */
+public class SensorChannel {
+    private final SessionHeader header;
+    private final SampleRing ring;
+    private final ChannelMetrics metrics = new ChannelMetrics();
+    private final SampleSink sink;
+    private final SessionMetadata metadata;
+    // Timestamp of the last sample before the stream was interrupted, 0 if streaming.
+    // Set from the connection callbacks and cleared on the sample thread.
+    private volatile long gapStart;
+
+    // Writer thread state, id of the channel in the session journal
+    int journalId = -1;
+
+    public SensorChannel(SessionHeader header, SampleRing ring, SampleSink sink, SessionMetadata metadata) {
+        this.header = header;
+        this.ring = ring;
+        this.sink = sink;
+        this.metadata = metadata;
+    }
+
+    public void add(long timestamp, float x, float y, float z) {
+        if (gapStart != 0) {
+            metadata.addGap(header.getChannelName(), gapStart, timestamp);
+            gapStart = 0;
+        }
+        ring.offer(timestamp, x, y, z);
+        metrics.record(timestamp, x, y, z);
+    }
+
+    /**
+     * Like {@link #add} but waits for room instead of dropping the sample, for data
+     * downloaded from the board's log where waiting costs nothing but time.
+     */
+    public void put(long timestamp, float x, float y, float z) {
+        ring.put(timestamp, x, y, z);
+        metrics.record(timestamp, x, y, z);
+    }
+
+    /**
+     * Marks the stream as interrupted.  The gap is recorded in the session metadata
+     * when the first sample after it arrives.  Must be called before the routes
+     * feeding this channel are installed again.  If no sample arrived yet the gap
+     * starts at the time of the call.
+     */
+    public void beginGap() {
+        if (gapStart == 0) {
+            long last = metrics.getLastTimestamp();
+            gapStart = last != 0 ? last : TimestampFormatter.millisToNanos(System.currentTimeMillis());
+        }
+    }
+
+    public SessionHeader getHeader() {
+        return header;
+    }
+
+    public String getMacAddress() {
+        return header.getMacAddress();
+    }
+
+    public String getSensor() {
+        return header.getSensor();
+    }
+
+    public SampleRing getRing() {
+        return ring;
+    }
+
+    public ChannelMetrics getMetrics() {
+        return metrics;
+    }
+
+    public SampleSink getSink() {
+        return sink;
+    }
+
+    @Override
+    public String toString() {
+        return header.getChannelName() + ": " + metrics + ", dropped=" + ring.getOverflowCount();
+    }
+}
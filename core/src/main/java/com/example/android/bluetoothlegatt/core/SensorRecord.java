@@ -0,0 +1,53 @@
+package com.example.android.bluetoothlegatt.core;
+
+/**
+ * Created by Ken on /13/0717.
+ */
+
+public class SensorRecord {
+    // Records are formatted from any thread, so each thread keeps its own formatter
+    private static final ThreadLocal<TimestampFormatter> FORMATTER = new ThreadLocal<TimestampFormatter>() {
+        @Override
+        protected TimestampFormatter initialValue() {
+            return new TimestampFormatter();
+        }
+    };
+
+    // Epoch time in nanoseconds
+    private long timestamp;
+    private float x;
+    private float y;
+    private float z;
+
+    public SensorRecord(long timestamp, float x, float y, float z) {
+        this.timestamp = timestamp;
+        this.x = x;
+        this.y = y;
+        this.z = z;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public float getX() {
+        return x;
+    }
+
+    public float getY() {
+        return y;
+    }
+
+    public float getZ() {
+        return z;
+    }
+
+    public String getFormattedTimestamp() {
+        return FORMATTER.get().format(timestamp);
+    }
+
+    @Override
+    public String toString() {
+        return getFormattedTimestamp() + ", " + x + ", " + y + ", " + z;
+    }
+}
@@ -0,0 +1,27 @@
+package com.example.android.bluetoothlegatt.core;
+
+/**
+ * Raw int16 readings per unit for the BMI160's accelerometer and gyro ranges, as
+ * stored in {@link SessionHeader#getScale()}.
+ */
+public class SensorScale {
+    // BMI160 gyro sensitivity is 16.4 LSB/(deg/s) at 2000 deg/s, not 32768 / 2000
+    private static final float GYRO_FULL_SCALE = 32800f;
+
+    private SensorScale() {
+    }
+
+    /**
+     * Raw readings per g at an accelerometer range of {@code range} g.
+     */
+    public static float accel(float range) {
+        return 32768f / range;
+    }
+
+    /**
+     * Raw readings per deg/s at a gyro range of {@code range} deg/s.
+     */
+    public static float gyro(float range) {
+        return GYRO_FULL_SCALE / range;
+    }
+}
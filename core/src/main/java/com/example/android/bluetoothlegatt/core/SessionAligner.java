@@ -0,0 +1,181 @@
+package com.example.android.bluetoothlegatt.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Sets up {@link TimelineAligner}s for the channels of a session, and aligns the
+ * binary files of a finished session into one matrix file.  The files are read a
+ * block at a time and merged in timestamp order, so memory stays bounded however
+ * long the session was.  The segment files of a rotated channel are joined back up
+ * into one column.
+ */
+public class SessionAligner {
+    // Samples of a channel further apart than this many of its own periods are a dropout
+    private static final int MAX_GAP_PERIODS = 4;
+    // How long the timeline waits for a channel that falls behind the others
+    private static final long MAX_LAG = 2000000000L;
+    // Samples aligned between progress reports
+    private static final int PROGRESS_INTERVAL = 4096;
+
+    private final long period;
+    private final TimelineAligner.Interpolation interpolation;
+    private final int compressionLevel;
+
+    /**
+     * @param rate Rows per second of the aligned timeline, positive and low enough to
+     *             leave a period of at least a nanosecond
+     */
+    public SessionAligner(float rate, TimelineAligner.Interpolation interpolation) {
+        this(rate, interpolation, SessionCompression.NONE);
+    }
+
+    /**
+     * @param compressionLevel Deflate level of the matrix files from 1 to 9, or
+     *                         {@link SessionCompression#NONE}
+     */
+    public SessionAligner(float rate, TimelineAligner.Interpolation interpolation, int compressionLevel) {
+        this.period = (long) (1e9 / rate);
+        if (period <= 0) {
+            throw new IllegalArgumentException("Alignment rate " + rate + " gives no usable period");
+        }
+        this.interpolation = interpolation;
+        this.compressionLevel = compressionLevel;
+    }
+
+    public TimelineAligner newAligner(List<SessionHeader> headers, TimelineAligner.Listener listener) {
+        float slowest = Float.MAX_VALUE;
+        for (SessionHeader header : headers) {
+            slowest = Math.min(slowest, header.getOdr());
+        }
+        long maxGap = headers.isEmpty() ? period : (long) (MAX_GAP_PERIODS * 1e9 / slowest);
+        return new TimelineAligner(headers.size(), period, maxGap, MAX_LAG, interpolation, listener);
+    }
+
+    /**
+     * Opens the matrix file of a session in {@code directory}, with a column for each
+     * axis of each channel.
+     */
+    public AlignedMatrixWriter newWriter(File directory, long startTime, List<SessionHeader> headers) throws IOException {
+        List<String> names = new ArrayList<>();
+        for (SessionHeader header : headers) {
+            names.add(header.getChannelName());
+        }
+        return new AlignedMatrixWriter(SessionFormat.newFile(directory, "aligned", startTime,
+                ".txt" + SessionCompression.extension(compressionLevel)), names, compressionLevel);
+    }
+
+    /**
+     * Writes the aligned matrix of the binary session files in {@code sessions} next to
+     * them.  Files of other types are ignored.
+     *
+     * @return The matrix file, or null if there were no samples
+     */
+    public File align(List<File> sessions) throws IOException {
+        return align(sessions, null);
+    }
+
+    /**
+     * Like {@link #align(List)}, reporting to {@code progress} every few thousand
+     * samples.  The partly written file is deleted if the export is cancelled.
+     */
+    public File align(List<File> sessions, SessionExporter.Progress progress) throws IOException {
+        List<ChannelReader> readers = new ArrayList<>();
+        Map<String, ChannelReader> channels = new HashMap<>();
+        List<SampleBuffer> blocks = new ArrayList<>();
+        List<SessionHeader> headers = new ArrayList<>();
+        AlignedMatrixWriter writer = null;
+        try {
+            for (File session : sessions) {
+                if (session.getName().endsWith(SessionFormat.EXTENSION)) {
+                    BinarySampleReader segment = new BinarySampleReader(session);
+                    String name = segment.getHeader().getChannelName();
+                    if (channels.containsKey(name)) {
+                        // Later segments of a channel are read once the ones before run out
+                        channels.get(name).files.add(session);
+                        segment.close();
+                        continue;
+                    }
+                    ChannelReader reader = new ChannelReader(session, segment);
+                    readers.add(reader);
+                    channels.put(name, reader);
+                    headers.add(reader.getHeader());
+                    SampleBuffer block = new SampleBuffer();
+                    reader.readBlock(block);
+                    blocks.add(block);
+                }
+            }
+
+            int[] cursors = new int[readers.size()];
+            boolean[] exhausted = new boolean[readers.size()];
+            long start = Long.MAX_VALUE;
+            for (SampleBuffer block : blocks) {
+                if (!block.isEmpty()) {
+                    start = Math.min(start, block.getTimestamp(0));
+                }
+            }
+            if (start == Long.MAX_VALUE) {
+                return null;
+            }
+
+            writer = newWriter(sessions.get(0).getParentFile(), start, headers);
+            TimelineAligner aligner = newAligner(headers, writer);
+            long count = 0;
+            while (true) {
+                // Feed the oldest pending sample of any channel next
+                int channel = -1;
+                long oldest = Long.MAX_VALUE;
+                for (int i = 0; i < blocks.size(); i++) {
+                    SampleBuffer block = blocks.get(i);
+                    if (cursors[i] == block.size()) {
+                        block.clear();
+                        cursors[i] = 0;
+                        if (exhausted[i] || !readers.get(i).readBlock(block)) {
+                            exhausted[i] = true;
+                            continue;
+                        }
+                    }
+                    if (block.getTimestamp(cursors[i]) < oldest) {
+                        oldest = block.getTimestamp(cursors[i]);
+                        channel = i;
+                    }
+                }
+                if (channel < 0) {
+                    break;
+                }
+
+                SampleBuffer block = blocks.get(channel);
+                int i = cursors[channel]++;
+                aligner.add(channel, block.getTimestamp(i), block.getX(i), block.getY(i), block.getZ(i));
+                if (progress != null && ++count % PROGRESS_INTERVAL == 0) {
+                    float total = 0;
+                    for (ChannelReader reader : readers) {
+                        total += reader.getProgress();
+                    }
+                    progress.update(total / readers.size());
+                }
+            }
+            aligner.finish();
+            return writer.getFile();
+        } catch (InterruptedIOException e) {
+            if (writer != null) {
+                writer.close();
+                writer.getFile().delete();
+                writer = null;
+            }
+            throw e;
+        } finally {
+            for (ChannelReader reader : readers) {
+                reader.close();
+            }
+            if (writer != null) {
+                writer.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.example.android.bluetoothlegatt.core;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Streaming gzip compression of session files.  Compressed files are written with
+ * {@link java.util.zip.Deflater#SYNC_FLUSH} on every flush, so everything up to the
+ * last flush can be decompressed from a file that was never closed, e.g. because
+ * the app was killed mid-session.  Binary session files keep their extension and are
+ * told apart by the gzip magic number; text files get ".gz" appended so other tools
+ * recognise them.
+ */
+public final class SessionCompression {
+    /** Level that writes plain, uncompressed files. */
+    public static final int NONE = 0;
+    public static final int MAX_LEVEL = 9;
+    public static final String EXTENSION = ".gz";
+
+    private static final int BUFFER_SIZE = 65536;
+    private static final int GZIP_MAGIC = 0x8b1f;
+
+    private SessionCompression() {
+    }
+
+    /**
+     * @return {@link #EXTENSION} if {@code level} compresses, otherwise an empty string
+     */
+    public static String extension(int level) {
+        return level == NONE ? "" : EXTENSION;
+    }
+
+    /**
+     * Opens {@code file} for writing, compressed at {@code level} from 1 to 9 or plain
+     * if it is {@link #NONE}.  Either way the stream is buffered.
+     */
+    public static OutputStream openOutput(File file, boolean append, int level) throws IOException {
+        OutputStream output = new BufferedOutputStream(new FileOutputStream(file, append), BUFFER_SIZE);
+        if (level == NONE) {
+            return output;
+        }
+        try {
+            return new LevelGzipOutputStream(output, level);
+        } catch (IOException e) {
+            output.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Wraps {@code input} in a decompressing stream if it starts with the gzip magic
+     * number.  A compressed file cut short after its last flush reads up to that flush,
+     * then throws {@link java.io.EOFException}.
+     */
+    public static InputStream openInput(InputStream input) throws IOException {
+        BufferedInputStream buffered = new BufferedInputStream(input, BUFFER_SIZE);
+        buffered.mark(2);
+        int magic = buffered.read() | (buffered.read() << 8);
+        buffered.reset();
+        return magic == GZIP_MAGIC ? new GZIPInputStream(buffered, BUFFER_SIZE) : buffered;
+    }
+
+    private static class LevelGzipOutputStream extends GZIPOutputStream {
+        LevelGzipOutputStream(OutputStream output, int level) throws IOException {
+            super(output, BUFFER_SIZE, true);
+            def.setLevel(level);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.example.android.bluetoothlegatt.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+
+/**
+ * Converts binary session files back into the "timestamp, x, y, z" text files the app
+ * has always produced, optionally gzipped.
+ */
+public class SessionConverter {
+    private final SampleBuffer batch = new SampleBuffer();
+    private final int compressionLevel;
+
+    public SessionConverter() {
+        this(SessionCompression.NONE);
+    }
+
+    /**
+     * @param compressionLevel Deflate level from 1 to 9, or {@link SessionCompression#NONE}
+     */
+    public SessionConverter(int compressionLevel) {
+        this.compressionLevel = compressionLevel;
+    }
+
+    /**
+     * Writes the text version of {@code session} next to it.
+     *
+     * @return The text file, or null if the session had no samples
+     */
+    public File toText(File session) throws IOException {
+        return toText(session, null);
+    }
+
+    /**
+     * Like {@link #toText(File)}, reporting to {@code progress} after every block.  The
+     * partly written text file is deleted if the export is cancelled.
+     */
+    public File toText(File session, SessionExporter.Progress progress) throws IOException {
+        String name = session.getName();
+        if (name.endsWith(SessionFormat.EXTENSION)) {
+            name = name.substring(0, name.length() - SessionFormat.EXTENSION.length());
+        }
+        File text = new File(session.getParentFile(), name + ".txt" + SessionCompression.extension(compressionLevel));
+
+        BinarySampleReader reader = new BinarySampleReader(session);
+        TextSampleSink sink = new TextSampleSink(text, compressionLevel);
+        try {
+            while (reader.readBlock(batch)) {
+                sink.write(batch);
+                batch.clear();
+                if (progress != null) {
+                    progress.update(reader.getProgress());
+                }
+            }
+        } catch (InterruptedIOException e) {
+            sink.close();
+            text.delete();
+            throw e;
+        } finally {
+            batch.clear();
+            reader.close();
+            sink.close();
+        }
+        return text.exists() ? text : null;
+    }
+}
@@ -0,0 +1,180 @@
+package com.example.android.bluetoothlegatt.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Exports the binary files of a finished session on a pool of worker threads.  The
+ * text file of every channel, the merged file and the aligned matrix are each their
+ * own job, so export time follows the cores and storage available rather than the
+ * number of channels.  Progress is reported per output file, and {@link #cancel()}
+ * stops every job at its next block, deleting the file it was writing.
+ */
+public class SessionExporter {
+    public interface Listener {
+        /**
+         * Called on the worker threads whenever an output file's progress moves on by
+         * a percent.
+         *
+         * @param name Name of the file being written, without extension
+         */
+        void onProgress(String name, int percent);
+    }
+
+    /**
+     * Progress of one export job.
+     */
+    public interface Progress {
+        /**
+         * @param fraction Part of the job done, from 0 to 1
+         * @throws InterruptedIOException Once the export has been cancelled
+         */
+        void update(float fraction) throws InterruptedIOException;
+    }
+
+    private static final Logger LOG = Logger.getLogger(SessionExporter.class.getName());
+
+    private final ExecutorService executor;
+    private final int compressionLevel;
+    private final Listener listener;
+    private volatile boolean cancelled;
+
+    /**
+     * @param executor         Runs the export jobs, sized to the number of cores
+     * @param compressionLevel Deflate level of the text files from 1 to 9, or
+     *                         {@link SessionCompression#NONE}
+     * @param listener         Receives progress, may be null
+     */
+    public SessionExporter(ExecutorService executor, int compressionLevel, Listener listener) {
+        this.executor = executor;
+        this.compressionLevel = compressionLevel;
+        this.listener = listener;
+    }
+
+    /**
+     * Writes the text file of every channel and the merged file of the binary session
+     * files in {@code sessions}, plus their aligned matrix if {@code aligner} is given,
+     * and waits for all of them.
+     *
+     * @return {@code sessions} followed by every file written, which after a
+     *         {@link #cancel()} leaves out the files that were still being written
+     */
+    public List<File> export(List<File> sessions, final SessionAligner aligner) {
+        final List<File> binaries = new ArrayList<>();
+        for (File session : sessions) {
+            if (session.getName().endsWith(SessionFormat.EXTENSION)) {
+                binaries.add(session);
+            }
+        }
+
+        List<Future<File>> jobs = new ArrayList<>();
+        for (final File session : binaries) {
+            String name = session.getName();
+            jobs.add(executor.submit(new Job(name.substring(0, name.length() - SessionFormat.EXTENSION.length())) {
+                @Override
+                File write() throws IOException {
+                    return new SessionConverter(compressionLevel).toText(session, this);
+                }
+            }));
+        }
+        jobs.add(executor.submit(new Job("merged") {
+            @Override
+            File write() throws IOException {
+                long start = System.nanoTime();
+                SessionMerger merger = new SessionMerger(compressionLevel);
+                File merged = merger.merge(binaries, this);
+                double seconds = (System.nanoTime() - start) / 1e9;
+                LOG.info(String.format(Locale.US, "Merged %d samples in %.1f s, %.0f samples/s",
+                        merger.getSampleCount(), seconds, merger.getSampleCount() / seconds));
+                return merged;
+            }
+        }));
+        if (aligner != null) {
+            jobs.add(executor.submit(new Job("aligned") {
+                @Override
+                File write() throws IOException {
+                    return aligner.align(binaries, this);
+                }
+            }));
+        }
+
+        List<File> files = new ArrayList<>(sessions);
+        for (Future<File> job : jobs) {
+            try {
+                File file = job.get();
+                if (file != null) {
+                    files.add(file);
+                }
+            }
+            catch (ExecutionException e) {
+                if (!(e.getCause() instanceof InterruptedIOException)) {
+                    LOG.log(Level.SEVERE, "Failed to export session", e.getCause());
+                }
+            }
+            catch (InterruptedException e) {
+                // Stops the remaining jobs, which then clean up after themselves
+                cancel();
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Stops the export, {@link #export} returns once every job has noticed.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Writes one output file, reporting its own progress.
+     */
+    private abstract class Job implements Callable<File>, Progress {
+        private final String name;
+        private int reported = -1;
+
+        Job(String name) {
+            this.name = name;
+        }
+
+        abstract File write() throws IOException;
+
+        @Override
+        public File call() throws IOException {
+            File file = write();
+            report(100);
+            return file;
+        }
+
+        @Override
+        public void update(float fraction) throws InterruptedIOException {
+            if (cancelled) {
+                throw new InterruptedIOException("Export cancelled");
+            }
+            report((int) (fraction * 100));
+        }
+
+        private void report(int percent) {
+            if (percent != reported && listener != null) {
+                reported = percent;
+                listener.onProgress(name, percent);
+            }
+        }
+    }
+}
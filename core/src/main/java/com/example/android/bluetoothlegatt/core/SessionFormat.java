@@ -0,0 +1,184 @@
+package com.example.android.bluetoothlegatt.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Layout of the binary session files.
+ *
+ * <pre>
+ * header: int magic, short version, UTF mac, UTF sensor, float odr, float range, float scale
+ * block:  int payload length, payload
+ * payload: byte encoding, varint count, long first timestamp, varint unit,
+ *          (count - 1) zigzag varint timestamp deltas in units,
+ *          x column, y column, z column as int16 raw readings or float32
+ * </pre>
+ *
+ * Blocks are only stored as int16 if every value converts back to exactly the
+ * same float, so decoding never changes a sample.
+ */
+public final class SessionFormat {
+    public static final int MAGIC = 0x4d575346;  // "MWSF"
+    public static final short VERSION = 1;
+    public static final String EXTENSION = ".mws";
+
+    public static final byte ENCODING_FLOAT32 = 0;
+    public static final byte ENCODING_INT16 = 1;
+
+    // Worst case bytes per sample: 10 byte delta plus three float32 values
+    private static final int MAX_SAMPLE_BYTES = 22;
+    private static final int BLOCK_OVERHEAD = 32;
+
+    private SessionFormat() {
+    }
+
+    /**
+     * Creates the file for a channel, named after the minute its first sample was taken.
+     */
+    public static File newFile(File directory, String channel, long firstTimestamp, String extension) {
+        String stamp = new TimestampFormatter().format(firstTimestamp).substring(0, 16).replace(":", "");
+        return new File(directory, channel.replace(":", "-") + "_" + stamp + extension);
+    }
+
+    public static int maxBlockSize(int count) {
+        return count * MAX_SAMPLE_BYTES + BLOCK_OVERHEAD;
+    }
+
+    /**
+     * Encodes a non-empty batch as one block payload.  {@code block} must have at least
+     * {@link #maxBlockSize(int)} bytes remaining.
+     *
+     * @param scale LSB per unit of the raw readings, 0 to always store floats
+     */
+    public static void encodeBlock(SampleBuffer batch, float scale, ByteBuffer block) {
+        encodeBlock(batch, 0, batch.size(), scale, block);
+    }
+
+    /**
+     * Encodes the samples {@code from} up to {@code to} of a batch as one block payload.
+     */
+    public static void encodeBlock(SampleBuffer batch, int from, int to, float scale, ByteBuffer block) {
+        boolean int16 = fitsInt16(batch, from, to, scale);
+        block.put(int16 ? ENCODING_INT16 : ENCODING_FLOAT32);
+        putVarLong(block, to - from);
+
+        // Deltas are stored in multiples of their common divisor, e.g. whole milliseconds
+        long unit = 0;
+        for (int i = from + 1; i < to; i++) {
+            unit = gcd(unit, batch.getTimestamp(i) - batch.getTimestamp(i - 1));
+        }
+        if (unit == 0) {
+            unit = 1;
+        }
+        block.putLong(batch.getTimestamp(from));
+        putVarLong(block, unit);
+        for (int i = from + 1; i < to; i++) {
+            putVarLong(block, zigzag((batch.getTimestamp(i) - batch.getTimestamp(i - 1)) / unit));
+        }
+
+        if (int16) {
+            for (int i = from; i < to; i++) {
+                block.putShort((short) Math.round(batch.getX(i) * scale));
+            }
+            for (int i = from; i < to; i++) {
+                block.putShort((short) Math.round(batch.getY(i) * scale));
+            }
+            for (int i = from; i < to; i++) {
+                block.putShort((short) Math.round(batch.getZ(i) * scale));
+            }
+        } else {
+            for (int i = from; i < to; i++) {
+                block.putFloat(batch.getX(i));
+            }
+            for (int i = from; i < to; i++) {
+                block.putFloat(batch.getY(i));
+            }
+            for (int i = from; i < to; i++) {
+                block.putFloat(batch.getZ(i));
+            }
+        }
+    }
+
+    /**
+     * Decodes one block payload, appending its samples to {@code target}.
+     */
+    public static void decodeBlock(ByteBuffer block, float scale, SampleBuffer target) throws IOException {
+        try {
+            byte encoding = block.get();
+            int count = (int) getVarLong(block);
+            long timestamp = block.getLong();
+            long unit = getVarLong(block);
+
+            int start = target.size();
+            target.add(timestamp, 0, 0, 0);
+            for (int i = 1; i < count; i++) {
+                timestamp += unzigzag(getVarLong(block)) * unit;
+                target.add(timestamp, 0, 0, 0);
+            }
+
+            for (int axis = 0; axis < 3; axis++) {
+                for (int i = 0; i < count; i++) {
+                    float value = encoding == ENCODING_INT16 ? block.getShort() / scale : block.getFloat();
+                    target.set(start + i, axis, value);
+                }
+            }
+        } catch (RuntimeException e) {
+            throw new IOException("Corrupt session block", e);
+        }
+    }
+
+    public static void putVarLong(ByteBuffer buffer, long value) {
+        while ((value & ~0x7fL) != 0) {
+            buffer.put((byte) ((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    public static long getVarLong(ByteBuffer buffer) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint");
+    }
+
+    public static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    public static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static boolean fitsInt16(SampleBuffer batch, int from, int to, float scale) {
+        if (scale == 0) {
+            return false;
+        }
+        for (int i = from; i < to; i++) {
+            if (!fitsInt16(batch.getX(i), scale) || !fitsInt16(batch.getY(i), scale) || !fitsInt16(batch.getZ(i), scale)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean fitsInt16(float value, float scale) {
+        int raw = Math.round(value * scale);
+        return raw >= Short.MIN_VALUE && raw <= Short.MAX_VALUE && raw / scale == value;
+    }
+
+    private static long gcd(long a, long b) {
+        while (b != 0) {
+            long t = a % b;
+            a = b;
+            b = t;
+        }
+        return Math.abs(a);
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.android.bluetoothlegatt.core;
+
+/**
+ * Describes the channel a binary session file was recorded from.
+ */
+public class SessionHeader {
+    private final String macAddress;
+    private final String sensor;
+    private final float odr;
+    private final float range;
+    private final float scale;
+
+    /**
+     * @param macAddress Board the samples came from
+     * @param sensor     Sensor name, e.g. ACCEL or GYRO
+     * @param odr        Output data rate in Hz
+     * @param range      Full scale range in the sensor's unit (g, deg/s)
+     * @param scale      LSB per unit of the raw readings, 0 if samples should always be
+     *                   stored as floats
+     */
+    public SessionHeader(String macAddress, String sensor, float odr, float range, float scale) {
+        this.macAddress = macAddress;
+        this.sensor = sensor;
+        this.odr = odr;
+        this.range = range;
+        this.scale = scale;
+    }
+
+    public String getMacAddress() {
+        return macAddress;
+    }
+
+    public String getSensor() {
+        return sensor;
+    }
+
+    public float getOdr() {
+        return odr;
+    }
+
+    public float getRange() {
+        return range;
+    }
+
+    public float getScale() {
+        return scale;
+    }
+
+    public String getChannelName() {
+        return macAddress + "_" + sensor;
+    }
+
+    @Override
+    public String toString() {
+        return getChannelName() + " @ " + odr + " Hz, range " + range;
+    }
+}
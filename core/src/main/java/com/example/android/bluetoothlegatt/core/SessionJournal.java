@@ -0,0 +1,573 @@
+package com.example.android.bluetoothlegatt.core;
+
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of the session being recorded, kept in memory mapped segment
+ * files.  Appending is a copy into the mapping, so samples survive the app being
+ * killed as soon as the writer thread has drained them, without a system call per
+ * batch.  A clean stop deletes the journal; if one is still around on the next
+ * launch, {@link #recover(File, File)} repairs the session files from it.
+ *
+ * <pre>
+ * frame: int payload length, int CRC32 of payload, payload
+ * payload: byte type, short channel, then for TYPE_CHANNEL the channel's SessionHeader
+ *          fields and long samples appended before, for TYPE_BLOCK a SessionFormat
+ *          block, or for TYPE_FILE long first sample, byte compression level, file name
+ * </pre>
+ *
+ * A zero length marks the unused end of a segment.  Every segment starts with the
+ * channel and file frames of the session so far, so older segments can be retired
+ * with {@link #retire()} once the session files have caught up with them.
+ */
+public class SessionJournal implements Closeable {
+    private static final Logger LOG = Logger.getLogger(SessionJournal.class.getName());
+    private static final String SEGMENT_PREFIX = "journal-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final int FRAME_HEADER = 8;
+    private static final byte TYPE_CHANNEL = 1;
+    private static final byte TYPE_BLOCK = 2;
+    private static final byte TYPE_FILE = 3;
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final File directory;
+    private final int segmentSize;
+    private final CRC32 crc = new CRC32();
+    private final List<SessionHeader> channels = new ArrayList<>();
+    // Samples appended and files started per channel, repeated at the start of every segment
+    private final List<Long> sampleCounts = new ArrayList<>();
+    private final List<List<FileEntry>> channelFiles = new ArrayList<>();
+    private ByteBuffer payload = ByteBuffer.allocate(SessionFormat.maxBlockSize(4096) + 16);
+    private final ByteBuffer preamble = ByteBuffer.allocate(1024);
+    private MappedByteBuffer segment;
+    private File segmentFile;
+    private int segmentIndex = -1;
+
+    /**
+     * Starts a new journal, discarding anything left in {@code directory}.
+     *
+     * @param segmentSize Bytes per segment file, must fit the largest batch appended
+     */
+    public SessionJournal(File directory, int segmentSize) throws IOException {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        delete(directory);
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create journal directory " + directory);
+        }
+    }
+
+    /**
+     * Records a channel's header and returns the id to append its batches with.
+     */
+    public int addChannel(SessionHeader header) throws IOException {
+        int id = channels.size();
+        channels.add(header);
+        sampleCounts.add(0L);
+        channelFiles.add(new ArrayList<FileEntry>());
+
+        payload.clear();
+        putChannel(payload, id);
+        appendFrame();
+        return id;
+    }
+
+    /**
+     * Records that the channel's samples from its {@code firstSample}th on go to
+     * {@code file}.  Called before the file is created, so recovery knows about every
+     * file the session has started.
+     */
+    public void addFile(int channel, File file, long firstSample, int compressionLevel) throws IOException {
+        FileEntry entry = new FileEntry(file, firstSample, compressionLevel);
+        channelFiles.get(channel).add(entry);
+
+        payload.clear();
+        putFile(payload, channel, entry);
+        appendFrame();
+    }
+
+    public void append(int channel, SampleBuffer batch) throws IOException {
+        if (batch.isEmpty()) {
+            return;
+        }
+        int size = SessionFormat.maxBlockSize(batch.size()) + 3;
+        if (payload.capacity() < size) {
+            payload = ByteBuffer.allocate(size);
+        }
+        payload.clear();
+        payload.put(TYPE_BLOCK).putShort((short) channel);
+        SessionFormat.encodeBlock(batch, channels.get(channel).getScale(), payload);
+        appendFrame();
+        sampleCounts.set(channel, sampleCounts.get(channel) + batch.size());
+    }
+
+    /**
+     * Deletes every segment but the current one.  To be called once the session files
+     * hold everything appended so far, so the journal only keeps what they may still
+     * lack instead of a second copy of the whole session.
+     */
+    public void retire() {
+        for (File file : listSegments(directory)) {
+            if (!file.equals(segmentFile) && !file.delete()) {
+                LOG.log(Level.SEVERE, "Failed to retire journal segment " + file);
+            }
+        }
+    }
+
+    /**
+     * Forces the current segment out to storage, protecting it against power loss as
+     * well as the app being killed.
+     */
+    public void force() {
+        if (segment != null) {
+            segment.force();
+        }
+    }
+
+    @Override
+    public void close() {
+        force();
+        segment = null;
+    }
+
+    /**
+     * Closes and deletes the journal once its session has been written out safely.
+     */
+    public void discard() {
+        close();
+        delete(directory);
+    }
+
+    public static void delete(File directory) {
+        File[] segments = listSegments(directory);
+        for (File file : segments) {
+            file.delete();
+        }
+        directory.delete();
+    }
+
+    public static boolean exists(File directory) {
+        return listSegments(directory).length > 0;
+    }
+
+    /**
+     * Journals left in the subdirectories of {@code root}, one per session that did not
+     * stop cleanly, oldest first.  {@code root} itself is included if it holds segments.
+     */
+    public static List<File> list(File root) {
+        List<File> journals = new ArrayList<>();
+        if (exists(root)) {
+            journals.add(root);
+        }
+        File[] files = root.listFiles();
+        if (files != null) {
+            Arrays.sort(files);
+            for (File file : files) {
+                if (file.isDirectory() && exists(file)) {
+                    journals.add(file);
+                }
+            }
+        }
+        return journals;
+    }
+
+    /**
+     * Repairs the binary session files of an interrupted recording in place.  Each file
+     * the journal recorded for a channel is checked against the samples the journal
+     * says it should hold, and a file missing its tail is rewritten with it, so the
+     * session keeps the files it had and no sample is stored twice.  Frames after the
+     * first torn or corrupt one are dropped and the segment truncated there.  The
+     * journal is deleted once the session files have been written.
+     *
+     * @return Every file of the session, repaired or not
+     */
+    public static List<File> recover(File directory, final File outputDirectory) throws IOException {
+        final Map<Integer, ChannelState> states = new TreeMap<>();
+        readFrames(directory, true, new FrameHandler() {
+            @Override
+            public void onFrame(byte type, int id, ByteBuffer frame) throws IOException {
+                ChannelState state = states.get(id);
+                if (type == TYPE_CHANNEL) {
+                    SessionHeader header = getHeader(frame);
+                    long sampleCount = frame.getLong();
+                    if (state == null) {
+                        state = new ChannelState(header);
+                        state.start = sampleCount;
+                        states.put(id, state);
+                    }
+                    state.samples = sampleCount;
+                } else if (type == TYPE_BLOCK && state != null) {
+                    frame.get();
+                    long count = SessionFormat.getVarLong(frame);
+                    if (state.firstTimestamp == 0) {
+                        state.firstTimestamp = frame.getLong();
+                    }
+                    state.samples += count;
+                } else if (type == TYPE_FILE && state != null) {
+                    long firstSample = frame.getLong();
+                    int compressionLevel = frame.get();
+                    File file = new File(outputDirectory, getString(frame));
+                    // Files are repeated at the start of every segment
+                    if (!state.contains(file)) {
+                        state.files.add(new FileEntry(file, firstSample, compressionLevel));
+                    }
+                }
+            }
+        });
+
+        List<File> files = new ArrayList<>();
+        for (Map.Entry<Integer, ChannelState> entry : states.entrySet()) {
+            ChannelState state = entry.getValue();
+            if (state.files.isEmpty()) {
+                if (state.samples == 0) {
+                    continue;
+                }
+                // Killed before the first file was opened
+                state.files.add(new FileEntry(SessionFormat.newFile(outputDirectory, state.header.getChannelName(),
+                        state.firstTimestamp, SessionFormat.EXTENSION), state.start, SessionCompression.NONE));
+            }
+            for (int i = 0; i < state.files.size(); i++) {
+                FileEntry file = state.files.get(i);
+                long end = i + 1 < state.files.size() ? state.files.get(i + 1).firstSample : state.samples;
+                // Files that were complete before the journal's first sample have nothing to restore
+                if (end > state.start) {
+                    long readable = countSamples(file.file);
+                    if (file.firstSample + readable < end) {
+                        repair(directory, entry.getKey(), state.header, file, readable, end);
+                    }
+                }
+                if (file.file.exists()) {
+                    files.add(file.file);
+                }
+            }
+        }
+        delete(directory);
+        return files;
+    }
+
+    /**
+     * Rewrites {@code file} with the {@code readable} samples it has, followed by the
+     * journal's copy of the channel's samples from there up to {@code end}.
+     */
+    private static void repair(File directory, final int id, SessionHeader header, FileEntry file, long readable,
+            final long end) throws IOException {
+        File temp = new File(file.file.getPath() + ".tmp");
+        final BlockWriter writer = new BlockWriter(temp, header, file.compressionLevel);
+        try {
+            final SampleBuffer samples = new SampleBuffer();
+            if (readable > 0) {
+                BinarySampleReader reader = new BinarySampleReader(file.file);
+                try {
+                    long copied = 0;
+                    while (copied < readable && reader.readBlock(samples)) {
+                        writer.write(samples, 0, samples.size());
+                        copied += samples.size();
+                        samples.clear();
+                    }
+                } finally {
+                    reader.close();
+                }
+            }
+
+            final long start = file.firstSample + readable;
+            readFrames(directory, false, new FrameHandler() {
+                long index;
+
+                @Override
+                public void onFrame(byte type, int channel, ByteBuffer frame) throws IOException {
+                    if (channel != id) {
+                        return;
+                    }
+                    if (type == TYPE_CHANNEL) {
+                        getHeader(frame);
+                        index = frame.getLong();
+                    }
+                    if (type != TYPE_BLOCK || index >= end) {
+                        return;
+                    }
+                    SessionFormat.decodeBlock(frame, writer.scale, samples);
+                    int from = (int) Math.max(0, start - index);
+                    int to = (int) Math.min(samples.size(), end - index);
+                    if (from < to) {
+                        writer.write(samples, from, to);
+                    }
+                    index += samples.size();
+                    samples.clear();
+                }
+            });
+        } finally {
+            writer.close();
+        }
+        if (!temp.renameTo(file.file)) {
+            temp.delete();
+            throw new IOException("Cannot replace " + file.file);
+        }
+    }
+
+    /**
+     * Samples in the complete blocks of a session file, 0 if it is missing or unreadable.
+     */
+    private static long countSamples(File file) {
+        if (!file.isFile()) {
+            return 0;
+        }
+        long count = 0;
+        SampleBuffer samples = new SampleBuffer();
+        try {
+            BinarySampleReader reader = new BinarySampleReader(file);
+            try {
+                while (reader.readBlock(samples)) {
+                    count += samples.size();
+                    samples.clear();
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (IOException e) {
+            // Everything up to the corrupt block still counts
+        }
+        return count;
+    }
+
+    private interface FrameHandler {
+        void onFrame(byte type, int channel, ByteBuffer frame) throws IOException;
+    }
+
+    /**
+     * Hands every valid frame of the journal to {@code handler}, positioned after the
+     * frame's type and channel.  With {@code truncate} each segment is cut off at its
+     * first torn or corrupt frame.
+     */
+    private static void readFrames(File directory, boolean truncate, FrameHandler handler) throws IOException {
+        CRC32 crc = new CRC32();
+        byte[] scratch = new byte[0];
+        for (File file : listSegments(directory)) {
+            RandomAccessFile raf = new RandomAccessFile(file, truncate ? "rw" : "r");
+            try {
+                FileChannel channel = raf.getChannel();
+                ByteBuffer segment = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                int valid = 0;
+                while (segment.remaining() >= FRAME_HEADER) {
+                    int length = segment.getInt();
+                    int checksum = segment.getInt();
+                    if (length <= 0 || length > segment.remaining()) {
+                        break;
+                    }
+
+                    ByteBuffer frame = segment.slice();
+                    frame.limit(length);
+                    if (scratch.length < length) {
+                        scratch = new byte[length];
+                    }
+                    frame.get(scratch, 0, length);
+                    crc.reset();
+                    crc.update(scratch, 0, length);
+                    if ((int) crc.getValue() != checksum) {
+                        break;
+                    }
+                    segment.position(segment.position() + length);
+                    valid = segment.position();
+
+                    frame.rewind();
+                    byte type = frame.get();
+                    int id = frame.getShort();
+                    handler.onFrame(type, id, frame);
+                }
+                if (truncate && valid < channel.size()) {
+                    channel.truncate(valid);
+                }
+            } finally {
+                raf.close();
+            }
+        }
+    }
+
+    /**
+     * What the journal holds about one channel.
+     */
+    private static class ChannelState {
+        final SessionHeader header;
+        final List<FileEntry> files = new ArrayList<>();
+        // Index of the channel's first sample in the journal, and one past its last
+        long start;
+        long samples;
+        long firstTimestamp;
+
+        ChannelState(SessionHeader header) {
+            this.header = header;
+        }
+
+        boolean contains(File file) {
+            for (FileEntry entry : files) {
+                if (entry.file.equals(file)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private static class FileEntry {
+        final File file;
+        final long firstSample;
+        final int compressionLevel;
+
+        FileEntry(File file, long firstSample, int compressionLevel) {
+            this.file = file;
+            this.firstSample = firstSample;
+            this.compressionLevel = compressionLevel;
+        }
+    }
+
+    /**
+     * Writes a session file block by block, for repairs.
+     */
+    private static class BlockWriter {
+        final DataOutputStream output;
+        final float scale;
+        ByteBuffer block = ByteBuffer.allocate(SessionFormat.maxBlockSize(4096));
+
+        BlockWriter(File file, SessionHeader header, int compressionLevel) throws IOException {
+            output = new DataOutputStream(SessionCompression.openOutput(file, false, compressionLevel));
+            scale = header.getScale();
+            BinarySampleSink.writeHeader(output, header);
+        }
+
+        void write(SampleBuffer samples, int from, int to) throws IOException {
+            int size = SessionFormat.maxBlockSize(to - from);
+            if (block.capacity() < size) {
+                block = ByteBuffer.allocate(size);
+            }
+            block.clear();
+            SessionFormat.encodeBlock(samples, from, to, scale, block);
+            output.writeInt(block.position());
+            output.write(block.array(), 0, block.position());
+        }
+
+        void close() throws IOException {
+            output.close();
+        }
+    }
+
+    private void appendFrame() throws IOException {
+        payload.flip();
+        int length = payload.remaining();
+        if (segment == null || segment.remaining() < length + FRAME_HEADER) {
+            nextSegment();
+        }
+        if (segment.remaining() < length + FRAME_HEADER) {
+            throw new IOException("Journal frame of " + length + " bytes exceeds segment size");
+        }
+        writeFrame(payload);
+    }
+
+    private void writeFrame(ByteBuffer frame) {
+        int length = frame.remaining();
+        crc.reset();
+        crc.update(frame.array(), 0, length);
+        // The length goes in last so a torn frame never looks complete
+        int start = segment.position();
+        segment.position(start + 4);
+        segment.putInt((int) crc.getValue());
+        segment.put(frame);
+        segment.putInt(start, length);
+    }
+
+    /**
+     * Maps the next segment and starts it with every channel and its files, so it can
+     * be recovered once the segments before it have been retired.
+     */
+    private void nextSegment() throws IOException {
+        force();
+        segmentIndex++;
+        segmentFile = new File(directory, String.format("%s%05d%s", SEGMENT_PREFIX, segmentIndex, SEGMENT_SUFFIX));
+        RandomAccessFile raf = new RandomAccessFile(segmentFile, "rw");
+        try {
+            raf.setLength(segmentSize);
+            segment = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        } finally {
+            // The mapping stays valid after the channel is closed
+            raf.close();
+        }
+
+        for (int id = 0; id < channels.size(); id++) {
+            preamble.clear();
+            putChannel(preamble, id);
+            preamble.flip();
+            writeFrame(preamble);
+            for (FileEntry entry : channelFiles.get(id)) {
+                preamble.clear();
+                putFile(preamble, id, entry);
+                preamble.flip();
+                if (segment.remaining() < preamble.remaining() + FRAME_HEADER) {
+                    throw new IOException("Journal segment too small for the session's files");
+                }
+                writeFrame(preamble);
+            }
+        }
+    }
+
+    private void putChannel(ByteBuffer buffer, int id) {
+        SessionHeader header = channels.get(id);
+        buffer.put(TYPE_CHANNEL).putShort((short) id);
+        putString(buffer, header.getMacAddress());
+        putString(buffer, header.getSensor());
+        buffer.putFloat(header.getOdr()).putFloat(header.getRange()).putFloat(header.getScale());
+        buffer.putLong(sampleCounts.get(id));
+    }
+
+    private static void putFile(ByteBuffer buffer, int id, FileEntry entry) {
+        buffer.put(TYPE_FILE).putShort((short) id).putLong(entry.firstSample).put((byte) entry.compressionLevel);
+        putString(buffer, entry.file.getName());
+    }
+
+    private static File[] listSegments(File directory) {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return new File[0];
+        }
+        List<File> segments = new ArrayList<>();
+        for (File file : files) {
+            if (file.getName().startsWith(SEGMENT_PREFIX) && file.getName().endsWith(SEGMENT_SUFFIX)) {
+                segments.add(file);
+            }
+        }
+        File[] sorted = segments.toArray(new File[segments.size()]);
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    private static void putString(ByteBuffer buffer, String value) {
+        byte[] bytes = value.getBytes(UTF8);
+        buffer.putShort((short) bytes.length).put(bytes);
+    }
+
+    private static SessionHeader getHeader(ByteBuffer buffer) {
+        String macAddress = getString(buffer);
+        String sensor = getString(buffer);
+        return new SessionHeader(macAddress, sensor, buffer.getFloat(), buffer.getFloat(), buffer.getFloat());
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getShort()];
+        buffer.get(bytes);
+        return new String(bytes, UTF8);
+    }
+}
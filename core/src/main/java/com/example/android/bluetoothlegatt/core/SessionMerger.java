@@ -0,0 +1,187 @@
+package com.example.android.bluetoothlegatt.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Merges the binary files of a session into one time ordered text file with a
+ * "timestamp, channel, x, y, z" line per sample, channel being the board's MAC address
+ * and sensor.  Each channel is read a block at a time, its segment files one after
+ * the other, and a heap picks the channel with the oldest pending sample, so memory
+ * and open files stay constant however big and however often rotated the session is.
+ */
+public class SessionMerger {
+    // Samples merged between progress reports
+    private static final int PROGRESS_INTERVAL = 4096;
+
+    private final int compressionLevel;
+    private long sampleCount;
+
+    public SessionMerger() {
+        this(SessionCompression.NONE);
+    }
+
+    /**
+     * @param compressionLevel Deflate level from 1 to 9, or {@link SessionCompression#NONE}
+     */
+    public SessionMerger(int compressionLevel) {
+        this.compressionLevel = compressionLevel;
+    }
+
+    /**
+     * Writes the merged version of the binary session files in {@code sessions} next
+     * to them.  Files of other types are ignored.
+     *
+     * @return The merged file, or null if there were no samples
+     */
+    public File merge(List<File> sessions) throws IOException {
+        return merge(sessions, null);
+    }
+
+    /**
+     * Like {@link #merge(List)}, reporting to {@code progress} every few thousand
+     * samples.  The partly written file is deleted if the export is cancelled.
+     */
+    public File merge(List<File> sessions, SessionExporter.Progress progress) throws IOException {
+        sampleCount = 0;
+        List<Cursor> cursors = new ArrayList<>();
+        PriorityQueue<Cursor> heap = new PriorityQueue<>(Math.max(1, sessions.size()), new Comparator<Cursor>() {
+            @Override
+            public int compare(Cursor a, Cursor b) {
+                int order = Long.compare(a.timestamp(), b.timestamp());
+                return order != 0 ? order : a.index - b.index;
+            }
+        });
+
+        AsciiFileWriter writer = null;
+        File merged = null;
+        try {
+            Map<String, Cursor> channels = new HashMap<>();
+            for (File session : sessions) {
+                if (session.getName().endsWith(SessionFormat.EXTENSION)) {
+                    BinarySampleReader segment = new BinarySampleReader(session);
+                    String name = segment.getHeader().getChannelName();
+                    if (channels.containsKey(name)) {
+                        // Later segments of a channel are read once the ones before run out
+                        channels.get(name).reader.files.add(session);
+                        segment.close();
+                        continue;
+                    }
+                    Cursor cursor = new Cursor(cursors.size(), new ChannelReader(session, segment));
+                    cursors.add(cursor);
+                    channels.put(name, cursor);
+                }
+            }
+            for (Cursor cursor : cursors) {
+                if (cursor.advance()) {
+                    heap.add(cursor);
+                }
+            }
+            if (heap.isEmpty()) {
+                return null;
+            }
+
+            merged = SessionFormat.newFile(sessions.get(0).getParentFile(), "merged", heap.peek().timestamp(),
+                    ".txt" + SessionCompression.extension(compressionLevel));
+            writer = new AsciiFileWriter(merged, false, compressionLevel);
+            TimestampFormatter formatter = new TimestampFormatter();
+            StringBuilder line = new StringBuilder(96);
+            while (!heap.isEmpty()) {
+                Cursor cursor = heap.poll();
+                SampleBuffer block = cursor.block;
+                int i = cursor.position;
+
+                line.setLength(0);
+                formatter.appendTo(line, block.getTimestamp(i))
+                        .append(", ").append(cursor.name)
+                        .append(", ").append(block.getX(i))
+                        .append(", ").append(block.getY(i))
+                        .append(", ").append(block.getZ(i));
+                writer.append(line).newLine();
+                sampleCount++;
+                if (progress != null && sampleCount % PROGRESS_INTERVAL == 0) {
+                    progress.update(progress(cursors));
+                }
+
+                if (cursor.advance()) {
+                    heap.add(cursor);
+                }
+            }
+        } catch (InterruptedIOException e) {
+            if (writer != null) {
+                writer.close();
+                writer = null;
+            }
+            merged.delete();
+            throw e;
+        } finally {
+            for (Cursor cursor : cursors) {
+                cursor.reader.close();
+            }
+            if (writer != null) {
+                writer.close();
+            }
+        }
+        return merged;
+    }
+
+    private static float progress(List<Cursor> cursors) throws IOException {
+        float total = 0;
+        for (Cursor cursor : cursors) {
+            total += cursor.reader.getProgress();
+        }
+        return total / cursors.size();
+    }
+
+    /**
+     * Samples written by the last {@link #merge}.
+     */
+    public long getSampleCount() {
+        return sampleCount;
+    }
+
+    /**
+     * Position in one channel, holding the block its current sample came from.
+     */
+    private static class Cursor {
+        final int index;
+        final ChannelReader reader;
+        final String name;
+        final SampleBuffer block = new SampleBuffer();
+        int position = -1;
+
+        Cursor(int index, ChannelReader reader) {
+            this.index = index;
+            this.reader = reader;
+            this.name = reader.getHeader().getChannelName();
+        }
+
+        long timestamp() {
+            return block.getTimestamp(position);
+        }
+
+        /**
+         * Moves to the next sample, reading the next block when needed.
+         *
+         * @return False once the channel has no samples left
+         */
+        boolean advance() throws IOException {
+            position++;
+            while (position >= block.size()) {
+                block.clear();
+                position = 0;
+                if (!reader.readBlock(block)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.example.android.bluetoothlegatt.core;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Facts about a recording session that are not samples: when it ran, how much each
+ * channel recorded, where streams were interrupted, and the time range and sample
+ * count of every file, so tools can pick the files of the window they need.  Written
+ * as a small text file next to the channel files.
+ */
+public class SessionMetadata {
+    public static class Gap {
+        public final String channel;
+        // Epoch nanos of the last sample before and the first sample after the gap
+        public final long start;
+        public final long end;
+
+        public Gap(String channel, long start, long end) {
+            this.channel = channel;
+            this.start = start;
+            this.end = end;
+        }
+    }
+
+    private final List<Gap> gaps = new ArrayList<>();
+    private long startTime;
+    private long stopTime;
+
+    public synchronized void setStartTime(long startTime) {
+        this.startTime = startTime;
+    }
+
+    public synchronized long getStartTime() {
+        return startTime;
+    }
+
+    public synchronized void setStopTime(long stopTime) {
+        this.stopTime = stopTime;
+    }
+
+    public synchronized void addGap(String channel, long start, long end) {
+        gaps.add(new Gap(channel, start, end));
+    }
+
+    public synchronized List<Gap> getGaps() {
+        return new ArrayList<>(gaps);
+    }
+
+    public synchronized void write(File file, List<SensorChannel> channels) throws IOException {
+        TimestampFormatter formatter = new TimestampFormatter();
+        BufferedWriter writer = new BufferedWriter(new FileWriter(file));
+        try {
+            writer.write("start, " + formatter.format(startTime));
+            writer.newLine();
+            // Not stopped yet when the file is rewritten for a new segment
+            if (stopTime != 0) {
+                writer.write("stop, " + formatter.format(stopTime));
+                writer.newLine();
+            }
+            for (SensorChannel channel : channels) {
+                writer.write("channel, " + channel.getHeader().getChannelName()
+                        + ", " + channel.getHeader().getOdr() + " Hz, range " + channel.getHeader().getRange()
+                        + ", samples " + channel.getMetrics().getSampleCount()
+                        + ", dropped " + channel.getRing().getOverflowCount());
+                writer.newLine();
+            }
+            for (SensorChannel channel : channels) {
+                for (SampleSink.Segment segment : channel.getSink().getSegments()) {
+                    writer.write("segment, " + channel.getHeader().getChannelName() + ", " + segment.file.getName()
+                            + ", " + formatter.format(segment.first) + ", " + formatter.format(segment.last)
+                            + ", samples " + segment.samples);
+                    writer.newLine();
+                }
+            }
+            for (Gap gap : gaps) {
+                writer.write("gap, " + gap.channel + ", " + formatter.format(gap.start) + ", " + formatter.format(gap.end)
+                        + ", " + (gap.end - gap.start) / 1000000 + " ms");
+                writer.newLine();
+            }
+        } finally {
+            writer.close();
+        }
+    }
+}
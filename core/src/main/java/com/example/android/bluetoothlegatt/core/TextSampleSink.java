@@ -0,0 +1,97 @@
+package com.example.android.bluetoothlegatt.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Writes samples as "timestamp, x, y, z" lines.  Unless a file is given up front, it
+ * is created on the first batch so its name can carry the time of the first sample,
+ * matching the files the Stop button used to produce.
+ */
+public class TextSampleSink implements SampleSink {
+    private final File directory;
+    private final String name;
+    private final int compressionLevel;
+    private final TimestampFormatter formatter = new TimestampFormatter();
+    private final StringBuilder line = new StringBuilder(64);
+    private AsciiFileWriter writer;
+    private File file;
+    private Segment segment;
+
+    public TextSampleSink(File directory, String name) {
+        this(directory, name, null, SessionCompression.NONE);
+    }
+
+    public TextSampleSink(File file) {
+        this(file, SessionCompression.NONE);
+    }
+
+    /**
+     * @param compressionLevel Deflate level from 1 to 9, or {@link SessionCompression#NONE}
+     */
+    public TextSampleSink(File file, int compressionLevel) {
+        this(file.getParentFile(), null, file, compressionLevel);
+    }
+
+    private TextSampleSink(File directory, String name, File file, int compressionLevel) {
+        this.directory = directory;
+        this.name = name;
+        this.file = file;
+        this.compressionLevel = compressionLevel;
+    }
+
+    @Override
+    public File getFile() {
+        return file;
+    }
+
+    @Override
+    public List<Segment> getSegments() {
+        return segment == null ? Collections.<Segment>emptyList() : Collections.singletonList(segment);
+    }
+
+    @Override
+    public void write(SampleBuffer batch) throws IOException {
+        if (batch.isEmpty()) {
+            return;
+        }
+        if (writer == null) {
+            if (file == null) {
+                file = SessionFormat.newFile(directory, name, batch.getTimestamp(0), ".txt");
+            }
+            // Start the file afresh like the old FileWriter, unless reopening it after close()
+            writer = new AsciiFileWriter(file, segment != null, compressionLevel);
+            if (segment == null) {
+                segment = new Segment(file, batch.getTimestamp(0));
+            }
+        }
+        segment.last = batch.getTimestamp(batch.size() - 1);
+        segment.samples += batch.size();
+
+        for (int i = 0; i < batch.size(); i++) {
+            line.setLength(0);
+            formatter.appendTo(line, batch.getTimestamp(i))
+                    .append(", ").append(batch.getX(i))
+                    .append(", ").append(batch.getY(i))
+                    .append(", ").append(batch.getZ(i));
+            writer.append(line).newLine();
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (writer != null) {
+            writer.flush();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (writer != null) {
+            writer.close();
+            writer = null;
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package com.example.android.bluetoothlegatt.core;
+
+import java.io.IOException;
+
+/**
+ * Resamples several channels onto one uniform timeline, so the boards of a session
+ * can be analysed side by side.  Samples are fed in per channel as they arrive, and a
+ * row with every channel's x/y/z is emitted for each grid point as soon as all
+ * channels have moved past it.  Only the samples around the grid point being filled
+ * are kept, so memory is bounded by {@code maxLag} rather than the session length.
+ * <p>
+ * A channel that falls more than {@code maxLag} behind the others, e.g. a board that
+ * dropped, stops holding up the timeline and reads as NaN until it catches up.  NaN is
+ * also emitted where a channel's own samples are further than {@code maxGap} apart.
+ */
+public class TimelineAligner {
+    public enum Interpolation {
+        LINEAR,
+        NEAREST
+    }
+
+    public interface Listener {
+        /**
+         * Called for each grid point.  {@code values} holds x, y, z for every channel in
+         * order and is reused for the next row.
+         */
+        void onRow(long timestamp, float[] values) throws IOException;
+    }
+
+    private static final long UNSET = Long.MIN_VALUE;
+
+    private final Track[] tracks;
+    private final long period;
+    private final long maxGap;
+    private final long maxLag;
+    private final Interpolation interpolation;
+    private final Listener listener;
+    private final float[] row;
+    private long next = UNSET;
+    private long latest = UNSET;
+    private boolean finished;
+
+    /**
+     * @param period Nanoseconds between grid points
+     * @param maxGap Widest span, in nanoseconds, between two samples of a channel that is
+     *               still interpolated across
+     * @param maxLag How far, in nanoseconds, the timeline waits for a channel behind the others
+     */
+    public TimelineAligner(int channels, long period, long maxGap, long maxLag, Interpolation interpolation,
+            Listener listener) {
+        this.tracks = new Track[channels];
+        for (int i = 0; i < channels; i++) {
+            tracks[i] = new Track();
+        }
+        this.period = period;
+        this.maxGap = maxGap;
+        this.maxLag = maxLag;
+        this.interpolation = interpolation;
+        this.listener = listener;
+        this.row = new float[channels * 3];
+    }
+
+    public int getChannelCount() {
+        return tracks.length;
+    }
+
+    /**
+     * Adds a batch of one channel's samples, which must be in timestamp order.
+     */
+    public void add(int channel, SampleBuffer batch) throws IOException {
+        Track track = tracks[channel];
+        for (int i = 0; i < batch.size(); i++) {
+            track.add(batch.getTimestamp(i), batch.getX(i), batch.getY(i), batch.getZ(i));
+        }
+        if (!track.isEmpty() && track.last() > latest) {
+            latest = track.last();
+        }
+        emit();
+    }
+
+    /**
+     * Adds one sample of a channel, newer than the ones added before.
+     */
+    public void add(int channel, long timestamp, float x, float y, float z) throws IOException {
+        tracks[channel].add(timestamp, x, y, z);
+        if (timestamp > latest) {
+            latest = timestamp;
+        }
+        emit();
+    }
+
+    /**
+     * Emits the rest of the timeline, up to the last sample of any channel.
+     */
+    public void finish() throws IOException {
+        finished = true;
+        emit();
+    }
+
+    private void emit() throws IOException {
+        if (next == UNSET && !start()) {
+            return;
+        }
+        while (!(finished && next > latest)) {
+            boolean stalled = latest - next > maxLag;
+            for (Track track : tracks) {
+                if (!finished && !stalled && (track.isEmpty() || track.last() < next)) {
+                    return;
+                }
+            }
+
+            for (int i = 0; i < tracks.length; i++) {
+                tracks[i].sample(next, row, i * 3);
+            }
+            listener.onRow(next, row);
+            next += period;
+        }
+    }
+
+    // Starts the timeline at the first grid point every channel has reached, or without
+    // the channels that still have nothing once the others are maxLag ahead
+    private boolean start() {
+        long first = UNSET;
+        long earliest = Long.MAX_VALUE;
+        boolean complete = true;
+        for (Track track : tracks) {
+            if (track.isEmpty()) {
+                complete = false;
+                continue;
+            }
+            first = Math.max(first, track.first());
+            earliest = Math.min(earliest, track.first());
+        }
+        if (first == UNSET || (!complete && !finished && latest - earliest <= maxLag)) {
+            return false;
+        }
+        long remainder = first % period;
+        next = remainder == 0 ? first : first - remainder + (remainder > 0 ? period : 0);
+        return true;
+    }
+
+    /**
+     * Samples of one channel that may still be needed, in a ring that grows as needed.
+     */
+    private class Track {
+        private long[] timestamps = new long[64];
+        private float[] values = new float[64 * 3];
+        private int head;
+        private int size;
+
+        void add(long timestamp, float x, float y, float z) {
+            if (size > 0 && timestamp <= last()) {
+                return;
+            }
+            if (size == timestamps.length) {
+                grow();
+            }
+            int index = (head + size) & (timestamps.length - 1);
+            timestamps[index] = timestamp;
+            values[index * 3] = x;
+            values[index * 3 + 1] = y;
+            values[index * 3 + 2] = z;
+            size++;
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        long first() {
+            return timestamps[head];
+        }
+
+        long last() {
+            return timestamps[(head + size - 1) & (timestamps.length - 1)];
+        }
+
+        /**
+         * Writes x/y/z at {@code time} to {@code out}, dropping samples older than the
+         * one right before it.
+         */
+        void sample(long time, float[] out, int offset) {
+            int mask = timestamps.length - 1;
+            while (size >= 2 && timestamps[(head + 1) & mask] <= time) {
+                head = (head + 1) & mask;
+                size--;
+            }
+
+            int a = head;
+            int b = (head + 1) & mask;
+            if (size == 0 || timestamps[a] > time || (size == 1 && timestamps[a] != time)) {
+                // Nothing on one side of the grid point
+                out[offset] = out[offset + 1] = out[offset + 2] = Float.NaN;
+            } else if (timestamps[a] == time) {
+                System.arraycopy(values, a * 3, out, offset, 3);
+            } else if (timestamps[b] - timestamps[a] > maxGap) {
+                out[offset] = out[offset + 1] = out[offset + 2] = Float.NaN;
+            } else if (interpolation == Interpolation.NEAREST) {
+                int nearest = time - timestamps[a] <= timestamps[b] - time ? a : b;
+                System.arraycopy(values, nearest * 3, out, offset, 3);
+            } else {
+                float weight = (float) (time - timestamps[a]) / (timestamps[b] - timestamps[a]);
+                for (int axis = 0; axis < 3; axis++) {
+                    float from = values[a * 3 + axis];
+                    out[offset + axis] = from + (values[b * 3 + axis] - from) * weight;
+                }
+            }
+        }
+
+        private void grow() {
+            long[] newTimestamps = new long[timestamps.length * 2];
+            float[] newValues = new float[values.length * 2];
+            for (int i = 0; i < size; i++) {
+                int index = (head + i) & (timestamps.length - 1);
+                newTimestamps[i] = timestamps[index];
+                System.arraycopy(values, index * 3, newValues, i * 3, 3);
+            }
+            timestamps = newTimestamps;
+            values = newValues;
+            head = 0;
+        }
+    }
+}
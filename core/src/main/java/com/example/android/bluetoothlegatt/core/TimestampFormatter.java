@@ -0,0 +1,56 @@
+package com.example.android.bluetoothlegatt.core;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * Formats epoch nanosecond timestamps the same way as Data.formattedTimestamp()
+ * (yyyy-MM-dd'T'HH:mm:ss.SSS).  The date/time part is cached for the current second
+ * so consecutive samples only pay for appending the milliseconds.  Not thread safe,
+ * use one instance per writer.
+ */
+public class TimestampFormatter {
+    private static final long NANOS_PER_MILLI = 1000000L;
+
+    private final SimpleDateFormat secondFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss", Locale.US);
+    private final Date date = new Date();
+    private long cachedSecond = Long.MIN_VALUE;
+    private String cachedPrefix;
+
+    public String format(long epochNanos) {
+        return appendTo(new StringBuilder(23), epochNanos).toString();
+    }
+
+    public StringBuilder appendTo(StringBuilder builder, long epochNanos) {
+        long millis = floorDiv(epochNanos, NANOS_PER_MILLI);
+        long second = floorDiv(millis, 1000);
+        if (second != cachedSecond) {
+            date.setTime(second * 1000);
+            cachedPrefix = secondFormat.format(date);
+            cachedSecond = second;
+        }
+
+        int fraction = (int) (millis - second * 1000);
+        builder.append(cachedPrefix).append('.');
+        if (fraction < 100) {
+            builder.append('0');
+        }
+        if (fraction < 10) {
+            builder.append('0');
+        }
+        return builder.append(fraction);
+    }
+
+    public static long millisToNanos(long epochMillis) {
+        return epochMillis * NANOS_PER_MILLI;
+    }
+
+    private static long floorDiv(long x, long y) {
+        long q = x / y;
+        if ((x % y != 0) && ((x ^ y) < 0)) {
+            q--;
+        }
+        return q;
+    }
+}
@@ -0,0 +1,126 @@
+package com.example.android.bluetoothlegatt.core;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SampleRingTest {
+    private static final int SAMPLES = 2000000;
+
+    @Test(timeout = 60000)
+    public void concurrentProducerAndConsumerKeepOrder() throws Exception {
+        final SampleRing ring = new SampleRing(16384);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < SAMPLES; i++) {
+                    ring.put(i, i, -i, i * 0.5f);
+                }
+            }
+        });
+        producer.setUncaughtExceptionHandler(new Thread.UncaughtExceptionHandler() {
+            @Override
+            public void uncaughtException(Thread thread, Throwable e) {
+                failure.set(e);
+            }
+        });
+
+        producer.start();
+        SampleBuffer batch = new SampleBuffer();
+        long expected = 0;
+        while (expected < SAMPLES) {
+            batch.clear();
+            ring.drainTo(batch, 4096);
+            for (int i = 0; i < batch.size(); i++) {
+                assertEquals(expected, batch.getTimestamp(i));
+                assertEquals((float) expected, batch.getX(i), 0);
+                assertEquals((float) -expected, batch.getY(i), 0);
+                assertEquals(expected * 0.5f, batch.getZ(i), 0);
+                expected++;
+            }
+        }
+        producer.join();
+
+        assertEquals(null, failure.get());
+        assertEquals(0, ring.size());
+        assertEquals(0, ring.drainTo(batch, 4096));
+        assertEquals(0, ring.getOverflowCount());
+    }
+
+    @Test
+    public void offerCountsOverflowWhenFull() {
+        SampleRing ring = new SampleRing(8);
+        for (int i = 0; i < ring.capacity(); i++) {
+            assertTrue(ring.offer(i, 0, 0, 0));
+        }
+        assertFalse(ring.offer(8, 0, 0, 0));
+        assertFalse(ring.offer(9, 0, 0, 0));
+        assertEquals(2, ring.getOverflowCount());
+        assertEquals(ring.capacity(), ring.size());
+
+        SampleBuffer batch = new SampleBuffer();
+        ring.drainTo(batch, 1);
+        assertTrue(ring.offer(10, 0, 0, 0));
+        assertEquals(2, ring.getOverflowCount());
+    }
+
+    @Test(timeout = 10000)
+    public void putWaitsForConsumer() throws Exception {
+        final SampleRing ring = new SampleRing(4);
+        for (int i = 0; i < ring.capacity(); i++) {
+            ring.put(i, 0, 0, 0);
+        }
+        final CountDownLatch done = new CountDownLatch(1);
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                ring.put(4, 0, 0, 0);
+                done.countDown();
+            }
+        });
+        producer.start();
+
+        assertFalse(done.await(200, TimeUnit.MILLISECONDS));
+        SampleBuffer batch = new SampleBuffer();
+        assertEquals(1, ring.drainTo(batch, 1));
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        producer.join();
+        assertEquals(0, ring.getOverflowCount());
+
+        batch.clear();
+        while (ring.drainTo(batch, 10) > 0) {
+        }
+        assertEquals(4, batch.size());
+        assertEquals(1, batch.getTimestamp(0));
+        assertEquals(4, batch.getTimestamp(3));
+    }
+
+    @Test
+    public void drainToWrapsAround() {
+        SampleRing ring = new SampleRing(8);
+        SampleBuffer batch = new SampleBuffer();
+        for (int i = 0; i < 6; i++) {
+            ring.offer(i, i, 0, 0);
+        }
+        assertEquals(6, ring.drainTo(batch, 6));
+
+        // Slots 6 and 7, then 0 to 4 again
+        for (int i = 6; i < 13; i++) {
+            assertTrue(ring.offer(i, i, 0, 0));
+        }
+        batch.clear();
+        assertEquals(7, ring.drainTo(batch, 100));
+        for (int i = 0; i < 7; i++) {
+            assertEquals(6 + i, batch.getTimestamp(i));
+            assertEquals(6f + i, batch.getX(i), 0);
+        }
+        assertEquals(0, ring.size());
+    }
+}